@@ -0,0 +1,203 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Runs benchmarks with the {@link MemoryProfiler} and checks the bytes the benchmark threads
+ * allocate per invocation against the {@link AllocationBudget} of each benchmark method. The
+ * process exits with status 1 if any benchmark allocates more than its budget, or its allocation
+ * could not be measured, benchmarks without a budget are only reported.
+ *
+ * The JMH harness allocates a few hundred bytes on the worker thread in every iteration, which
+ * for a scan of main memory running once or twice a second is more than the benchmark itself. The
+ * empty {@link Baseline} benchmark is run along with the others, and its allocation per iteration
+ * is taken off that of each iteration in the same mode before dividing by the operations. The
+ * smallest heap object is 16 bytes, so a benchmark fails once it allocates that much more than its
+ * budget.
+ *
+ * Unless given on the command line a short run is used, one fork with two warmup and three
+ * measurement iterations of a second each. Single shot benchmarks keep their batch size, as JMH
+ * would apply a batch size given here to every benchmark mode.
+ *
+ * Usage: java -cp target/benchmarks.jar sib.swiss.swissprot.AllocationGate [JMH options and
+ * benchmark regexps] **/
+package sib.swiss.swissprot;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+public class AllocationGate
+{
+	private static final String ALLOCATION = MemoryProfiler.ALLOCATED_BYTES_PER_OPERATION;
+	private static final String BASELINE = Baseline.class.getName().replace('$', '.') + ".";
+	private static final double SMALLEST_OBJECT = 16;
+
+	/** Does nothing, so that all it allocates is the harness. **/
+	public static class Baseline
+	{
+		@Benchmark
+		public void nothing()
+		{
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException
+	{
+		final CommandLineOptions commandLine = new CommandLineOptions(args);
+		ChainedOptionsBuilder options = BenchmarkProfiles.memoryProfiler(new OptionsBuilder().parent(
+		    commandLine), commandLine);
+		// Without a regexp JMH runs every benchmark, the baseline included.
+		if (!commandLine.getIncludes().isEmpty())
+			options = options.include(BASELINE.replace(".", "\\."));
+		if (!commandLine.getForkCount().hasValue())
+			options = options.forks(1);
+		if (!commandLine.getWarmupIterations().hasValue())
+			options = options.warmupIterations(2);
+		if (!commandLine.getWarmupTime().hasValue())
+			options = options.warmupTime(TimeValue.seconds(1));
+		if (!commandLine.getMeasurementIterations().hasValue())
+			options = options.measurementIterations(3);
+		if (!commandLine.getMeasurementTime().hasValue())
+			options = options.measurementTime(TimeValue.seconds(1));
+		final Collection<RunResult> results = new Runner(options.build()).run();
+		if (check(results) > 0)
+			System.exit(1);
+	}
+
+	/** @return the number of benchmarks over budget or not measured */
+	static int check(Collection<RunResult> results)
+	{
+		final Map<Mode, Double> harness = harnessBytesPerIteration(results);
+		int failures = 0;
+		for (RunResult result : results)
+		{
+			final String benchmark = result.getParams().getBenchmark();
+			if (benchmark.startsWith(BASELINE))
+				continue;
+			final String key = BenchmarkResults.key(result.getParams());
+			final AllocationBudget budget = budgetOf(benchmark);
+			final double perInvocation = bytesPerInvocation(result, harness.getOrDefault(result.getParams()
+			    .getMode(), 0d));
+			if (Double.isNaN(perInvocation))
+			{
+				System.out.printf("UNKNOWN    %s: %s not measured%n", key, ALLOCATION);
+				if (budget != null)
+					failures++;
+			}
+			else if (budget == null)
+				System.out.printf("UNCHECKED  %s: %.1f B/op%n", key, perInvocation);
+			else if (perInvocation >= budget.value() + SMALLEST_OBJECT)
+			{
+				System.out.printf("FAIL       %s: %.1f B/op, budget %d B/op%n", key, perInvocation, budget
+				    .value());
+				failures++;
+			}
+			else
+				System.out.printf("PASS       %s: %.1f B/op, budget %d B/op%n", key, perInvocation, budget
+				    .value());
+		}
+		System.out.printf("%d benchmark(s) over their allocation budget or not measured%n", failures);
+		return failures;
+	}
+
+	/** @return the most the baseline allocated in an iteration, per benchmark mode */
+	private static Map<Mode, Double> harnessBytesPerIteration(Collection<RunResult> results)
+	{
+		final Map<Mode, Double> harness = new EnumMap<>(Mode.class);
+		for (RunResult result : results)
+		{
+			if (!result.getParams().getBenchmark().startsWith(BASELINE))
+				continue;
+			for (BenchmarkResult fork : result.getBenchmarkResults())
+			{
+				for (IterationResult iteration : fork.getIterationResults())
+				{
+					final Result<?> allocation = iteration.getSecondaryResults().get(ALLOCATION);
+					if (allocation != null)
+						harness.merge(result.getParams().getMode(), allocation.getScore() * MemoryProfiler
+						    .operations(iteration), Math::max);
+				}
+			}
+		}
+		for (Map.Entry<Mode, Double> mode : harness.entrySet())
+		{
+			System.out.printf("BASELINE   %s: %.1f B/iteration%n", mode.getKey().shortLabel(), mode.getValue());
+		}
+		return harness;
+	}
+
+	/** @return the bytes allocated per invocation with the harness taken off each iteration, NaN if
+	 *         no iteration was measured */
+	private static double bytesPerInvocation(RunResult result, double harness)
+	{
+		double allocated = 0;
+		long operations = 0;
+		for (BenchmarkResult fork : result.getBenchmarkResults())
+		{
+			for (IterationResult iteration : fork.getIterationResults())
+			{
+				final Result<?> allocation = iteration.getSecondaryResults().get(ALLOCATION);
+				final long iterationOperations = MemoryProfiler.operations(iteration);
+				if (allocation == null || Double.isNaN(allocation.getScore()) || iterationOperations == 0)
+					continue;
+				allocated += Math.max(0, allocation.getScore() * iterationOperations - harness);
+				operations += iterationOperations;
+			}
+		}
+		return operations == 0 ? Double.NaN : allocated / operations;
+	}
+
+	static AllocationBudget budgetOf(String benchmark)
+	{
+		final int dot = benchmark.lastIndexOf('.');
+		try
+		{
+			final Class<?> benchmarkClass = Class.forName(benchmark.substring(0, dot));
+			for (Method method : benchmarkClass.getMethods())
+			{
+				if (method.getName().equals(benchmark.substring(dot + 1)))
+					return method.getAnnotation(AllocationBudget.class);
+			}
+			return null;
+		}
+		catch (ClassNotFoundException e)
+		{
+			throw new IllegalStateException("Benchmark class of " + benchmark + " is not on the classpath", e);
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Counts occurrences of a set of keys registered up front, like the per class counters of
+ * ClassHashCode but for key sets of millions, far larger than the caches. A HashMap lookup over
+ * such a set chases the key, the bucket and the entry, each a likely cache miss, and the next
+ * lookup does not start until the last one is done.
+ *
+ * {@link #incrementAll(Object[], int, int, int)} takes the keys in interleaved batches instead.
+ * It first hashes every key of a batch, then reads the bucket of every key, and only then compares
+ * and counts. The loads within each pass do not depend on each other, so the CPU keeps many of
+ * their misses in flight at once. Java has no prefetch instruction, the bucket reads of the second
+ * pass are what pull the lines into the cache for the third.
+ *
+ * The table is open addressed with linear probing. Each bucket holds the hash and the count next to
+ * each other in one int array, with the key in a parallel array, so counting a key touches at most
+ * two lines. It is not thread safe. **/
+package sib.swiss.swissprot;
+
+public final class BatchedKeyCounter<K>
+{
+	private static final int HASH = 0;
+	private static final int COUNT = 1;
+	private static final int BUCKET_WIDTH = 2;
+	private static final int GOLDEN_RATIO = 0x9E3779B9;
+
+	private final int[] buckets;
+	private final Object[] keys;
+	private final int mask;
+	private final int shift;
+	private int size;
+
+	// Scratch space of the batched passes, kept so that counting does not allocate.
+	private int[] hashes = new int[0];
+	private int[] slots = new int[0];
+	private int[] storedHashes = new int[0];
+	private Object[] storedKeys = new Object[0];
+
+	/** @param expectedKeys
+	 *            the number of keys that will be added, the table does not grow */
+	public BatchedKeyCounter(int expectedKeys)
+	{
+		if (expectedKeys < 0 || expectedKeys > (1 << 28))
+			throw new IllegalArgumentException("expectedKeys must be between 0 and 2^28 " + expectedKeys);
+		// At most three quarters full so that probe sequences stay short, with one slot always free.
+		final int needed = Math.max(2, expectedKeys + expectedKeys / 3 + 1);
+		final int capacity = Integer.highestOneBit(needed - 1) << 1;
+		keys = new Object[capacity];
+		buckets = new int[capacity * BUCKET_WIDTH];
+		mask = capacity - 1;
+		shift = Integer.numberOfLeadingZeros(mask);
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/** Registers a key with a count of zero.
+	 *
+	 * @return false if the key was already registered */
+	public boolean add(K key)
+	{
+		final int hash = key.hashCode();
+		int slot = slotOf(hash);
+		while (keys[slot] != null)
+		{
+			if (buckets[slot * BUCKET_WIDTH + HASH] == hash && keys[slot].equals(key))
+				return false;
+			slot = (slot + 1) & mask;
+		}
+		if (size == mask)
+			throw new IllegalStateException("More keys added than expected " + size);
+		keys[slot] = key;
+		buckets[slot * BUCKET_WIDTH + HASH] = hash;
+		buckets[slot * BUCKET_WIDTH + COUNT] = 0;
+		size++;
+		return true;
+	}
+
+	/** @return the count of the key, -1 if it is not registered */
+	public int count(K key)
+	{
+		final int hash = key.hashCode();
+		final int slot = find(key, hash, slotOf(hash));
+		return slot < 0 ? -1 : buckets[slot * BUCKET_WIDTH + COUNT];
+	}
+
+	/** Counts one key, looked up on its own.
+	 *
+	 * @return false if the key is not registered */
+	public boolean increment(K key)
+	{
+		final int hash = key.hashCode();
+		final int slot = find(key, hash, slotOf(hash));
+		if (slot < 0)
+			return false;
+		buckets[slot * BUCKET_WIDTH + COUNT]++;
+		return true;
+	}
+
+	/** Counts the keys from (inclusive) to (exclusive), looked up batch keys at a time. Keys that are
+	 * not registered are skipped.
+	 *
+	 * @return the number of keys counted */
+	public int incrementAll(K[] toCount, int from, int to, int batch)
+	{
+		if (batch < 1)
+			throw new IllegalArgumentException("batch must be positive " + batch);
+		if (from < 0 || to > toCount.length || from > to)
+			throw new IndexOutOfBoundsException("from " + from + " to " + to + " length " + toCount.length);
+		ensureScratch(batch);
+		int counted = 0;
+		for (int start = from; start < to; start += batch)
+		{
+			final int length = Math.min(batch, to - start);
+			for (int i = 0; i < length; i++)
+			{
+				final int hash = toCount[start + i].hashCode();
+				hashes[i] = hash;
+				slots[i] = slotOf(hash);
+			}
+			for (int i = 0; i < length; i++)
+			{
+				final int slot = slots[i];
+				storedHashes[i] = buckets[slot * BUCKET_WIDTH + HASH];
+				storedKeys[i] = keys[slot];
+			}
+			for (int i = 0; i < length; i++)
+			{
+				final K key = toCount[start + i];
+				final Object stored = storedKeys[i];
+				final int slot;
+				if (stored != null && storedHashes[i] == hashes[i] && (stored == key || stored.equals(key)))
+					slot = slots[i];
+				else
+					slot = find(key, hashes[i], slots[i]);
+				if (slot >= 0)
+				{
+					buckets[slot * BUCKET_WIDTH + COUNT]++;
+					counted++;
+				}
+			}
+		}
+		return counted;
+	}
+
+	private int find(Object key, int hash, int slot)
+	{
+		Object stored;
+		while ((stored = keys[slot]) != null)
+		{
+			if (buckets[slot * BUCKET_WIDTH + HASH] == hash && (stored == key || stored.equals(key)))
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private void ensureScratch(int batch)
+	{
+		if (hashes.length < batch)
+		{
+			hashes = new int[batch];
+			slots = new int[batch];
+			storedHashes = new int[batch];
+			storedKeys = new Object[batch];
+		}
+	}
+
+	/** Fibonacci hashing, the top bits of the multiplied hash pick the slot. **/
+	private int slotOf(int hash)
+	{
+		return (hash * GOLDEN_RATIO) >>> shift;
+	}
+}
@@ -0,0 +1,189 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Counts randomly drawn keys out of registries of 10 thousand to 10 million synthetic accessions,
+ * one HashMap.get at a time as in ClassHashCode, one at a time in a {@link BatchedKeyCounter} and
+ * in batches of various sizes in the same counter. With 10 thousand keys everything fits in the
+ * caches, with millions each lookup misses, and batching lets those misses overlap.
+ *
+ * Each operation counts the next 4096 keys of a sequence of a million random draws, so the
+ * buckets touched do not stay cached from one operation to the next. Only the structure that the
+ * running benchmark uses is built, as a HashMap and a counter over 10 million keys do not fit in a
+ * default heap together. **/
+package sib.swiss.swissprot;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+
+@State(Scope.Thread)
+@Fork(jvmArgsAppend = "-Xmx3g")
+public class BatchedKeyLookup
+{
+	private static final int LOOKUPS = 1 << 20;
+	private static final int LOOKUPS_PER_OPERATION = 4096;
+
+	@Param({ "10000", "1000000", "10000000" })
+	int registrySize;
+
+	String[] registry;
+	String[] lookups;
+	Map<String, Counter> map;
+	BatchedKeyCounter<String> counter;
+	private int next;
+
+	@Setup
+	public void setUp(BenchmarkParams params)
+	{
+		lookups = SyntheticKeys.sample(registry(), LOOKUPS, 42);
+		if (usesHashMap(params))
+			map = buildMap(registry());
+		else
+			counter = buildCounter(registry());
+	}
+
+	/** Measures the lookup structure of the running benchmark, without the keys it shares with the
+	 * registry. **/
+	@Setup
+	public void measureFootprint(BenchmarkParams params)
+	{
+		final String[] shared = registry();
+		final boolean hashMap = usesHashMap(params);
+		MemoryProfiler.recordFootprint(HeapMeasurement.bytesPerElement(() -> hashMap ? buildMap(shared)
+		    : buildCounter(shared), registrySize));
+	}
+
+	/** The keys are generated by whichever setup runs first, JMH does not order them. **/
+	private String[] registry()
+	{
+		if (registry == null)
+			registry = SyntheticKeys.accessions(registrySize);
+		return registry;
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		registry = null;
+		lookups = null;
+		map = null;
+		counter = null;
+	}
+
+	private static boolean usesHashMap(BenchmarkParams params)
+	{
+		return params.getBenchmark().endsWith("HashMapGet");
+	}
+
+	private static Map<String, Counter> buildMap(String[] registry)
+	{
+		final Map<String, Counter> map = new HashMap<>();
+		for (String key : registry)
+		{
+			map.put(key, new Counter());
+		}
+		return map;
+	}
+
+	private static BatchedKeyCounter<String> buildCounter(String[] registry)
+	{
+		final BatchedKeyCounter<String> counter = new BatchedKeyCounter<>(registry.length);
+		for (String key : registry)
+		{
+			counter.add(key);
+		}
+		return counter;
+	}
+
+	/** The batch size only matters to the batched benchmark, so it is a parameter of its own state. **/
+	@State(Scope.Thread)
+	public static class Batch
+	{
+		@Param({ "1", "4", "16", "64" })
+		int batchSize;
+	}
+
+	/** @return the index of the first lookup of this operation */
+	private int nextOperation()
+	{
+		final int from = next;
+		next = (next + LOOKUPS_PER_OPERATION) & (LOOKUPS - 1);
+		return from;
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public int countViaHashMapGet()
+	{
+		final int from = nextOperation();
+		int counted = 0;
+		for (int i = from; i < from + LOOKUPS_PER_OPERATION; i++)
+		{
+			map.get(lookups[i]).run();
+			counted++;
+		}
+		return counted;
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public int countViaBatchedKeyCounterOneAtATime()
+	{
+		final int from = nextOperation();
+		int counted = 0;
+		for (int i = from; i < from + LOOKUPS_PER_OPERATION; i++)
+		{
+			if (counter.increment(lookups[i]))
+				counted++;
+		}
+		return counted;
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public int countViaBatchedKeyCounter(Batch batch)
+	{
+		final int from = nextOperation();
+		return counter.incrementAll(lookups, from, from + LOOKUPS_PER_OPERATION, batch.batchSize);
+	}
+
+	static class Counter
+	{
+		private int count = 0;
+
+		void run()
+		{
+			count = count + 1;
+		}
+	}
+}
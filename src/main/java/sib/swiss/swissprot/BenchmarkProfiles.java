@@ -0,0 +1,236 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Runs the benchmarks under a named profile, trading fidelity for turnaround.
+ *
+ * <ul>
+ * <li>smoke: one fork, one short warmup and two short measurement iterations, single shot batches
+ * of a million invocations and only the smallest sizes. Gives a signal in about a minute while
+ * developing.</li>
+ * <li>ci: production iterations and batch sizes in a single fork, over every size.</li>
+ * <li>full: the annotation and JMH defaults, five forks, for releases.</li>
+ * </ul>
+ *
+ * A profile overrides settings per group of benchmarks, as the single shot ClassHashCode and
+ * ClassNameHashCode take their batch size from annotations while the others are timed. JMH takes
+ * one set of options per run, so each group is run on its own and the results are reported
+ * together. Options given on the command line win over the profile. Every profile reports memory
+ * use with the {@link MemoryProfiler}.
+ *
+ * Usage: java -cp target/benchmarks.jar sib.swiss.swissprot.BenchmarkProfiles [--profile
+ * smoke|ci|full] [JMH options and benchmark regexps] **/
+package sib.swiss.swissprot;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.BenchmarkList;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.format.OutputFormatFactory;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+public class BenchmarkProfiles
+{
+	enum Group
+	{
+		SINGLE_SHOT("\\.Class(Name)?HashCode\\."), TIMED(null);
+
+		/** Matches the benchmarks of the group, null for all those not in another group. **/
+		final String regexp;
+
+		Group(String regexp)
+		{
+			this.regexp = regexp;
+		}
+
+		ChainedOptionsBuilder select(ChainedOptionsBuilder options)
+		{
+			// JMH adds our includes to those of the command line, so a group is cut out with excludes.
+			if (regexp != null)
+				return options.exclude("^(?!.*(" + regexp + "))");
+			for (Group other : values())
+			{
+				if (other.regexp != null)
+					options = options.exclude(other.regexp);
+			}
+			return options;
+		}
+	}
+
+	enum Profile
+	{
+		SMOKE
+		{
+			@Override
+			ChainedOptionsBuilder configure(Group group, ChainedOptionsBuilder options, CommandLineOptions commandLine)
+			{
+				options = forks(1, options, commandLine);
+				options = param("workingSet", CacheSizes.L1, options, commandLine);
+				options = param("size", "2000", options, commandLine);
+				options = param("registrySize", "10000", options, commandLine);
+				options = param("chunk", "65536", options, commandLine);
+				if (group == Group.SINGLE_SHOT)
+				{
+					options = iterations(1, null, 2, null, options, commandLine);
+					if (!commandLine.getWarmupBatchSize().hasValue())
+						options = options.warmupBatchSize(1_000_000);
+					if (!commandLine.getMeasurementBatchSize().hasValue())
+						options = options.measurementBatchSize(1_000_000);
+					return options;
+				}
+				return iterations(1, TimeValue.milliseconds(100), 2, TimeValue.milliseconds(100), options,
+				    commandLine);
+			}
+		},
+		CI
+		{
+			@Override
+			ChainedOptionsBuilder configure(Group group, ChainedOptionsBuilder options, CommandLineOptions commandLine)
+			{
+				options = forks(1, options, commandLine);
+				if (group == Group.SINGLE_SHOT)
+					return options;
+				return iterations(5, TimeValue.seconds(1), 5, TimeValue.seconds(1), options, commandLine);
+			}
+		},
+		FULL
+		{
+			@Override
+			ChainedOptionsBuilder configure(Group group, ChainedOptionsBuilder options, CommandLineOptions commandLine)
+			{
+				return options;
+			}
+		};
+
+		abstract ChainedOptionsBuilder configure(Group group, ChainedOptionsBuilder options,
+		    CommandLineOptions commandLine);
+	}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException,
+	    FileNotFoundException, UnsupportedEncodingException
+	{
+		Profile profile = Profile.SMOKE;
+		final List<String> jmhArgs = new ArrayList<>();
+		for (int i = 0; i < args.length; i++)
+		{
+			if ("--profile".equals(args[i]) && i + 1 < args.length)
+				profile = Profile.valueOf(args[++i].toUpperCase(Locale.ROOT));
+			else
+				jmhArgs.add(args[i]);
+		}
+		final CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+		final List<RunResult> results = new ArrayList<>();
+		for (Group group : Group.values())
+		{
+			final Options options = profile.configure(group, group.select(memoryProfiler(new OptionsBuilder()
+			    .parent(commandLine), commandLine)), commandLine).build();
+			if (BenchmarkList.defaultList().find(OutputFormatFactory.createFormatInstance(System.out,
+			    VerboseMode.SILENT), options.getIncludes(), options.getExcludes()).isEmpty())
+				continue;
+			System.out.printf("# Profile %s, %s benchmarks%n", profile, group);
+			results.addAll(new Runner(options).run());
+		}
+		if (results.isEmpty())
+		{
+			System.err.println("No benchmarks match " + commandLine.getIncludes());
+			System.exit(1);
+		}
+		report(results, commandLine);
+	}
+
+	/** Prints the results of all groups as one table and, if asked for, writes them as one result
+	 * file in place of the file of the last group. **/
+	private static void report(Collection<RunResult> results, CommandLineOptions commandLine)
+	    throws FileNotFoundException, UnsupportedEncodingException
+	{
+		System.out.println();
+		ResultFormatFactory.getInstance(ResultFormatType.TEXT, System.out).writeOut(results);
+		if (!commandLine.getResultFormat().hasValue())
+			return;
+		final ResultFormatType format = commandLine.getResultFormat().get();
+		final String file = commandLine.getResult().orElse("jmh-result." + format.toString().toLowerCase(
+		    Locale.ROOT));
+		try (PrintStream out = new PrintStream(file, StandardCharsets.UTF_8.name()))
+		{
+			ResultFormatFactory.getInstance(format, out).writeOut(results);
+		}
+	}
+
+	private static ChainedOptionsBuilder forks(int forks, ChainedOptionsBuilder options,
+	    CommandLineOptions commandLine)
+	{
+		return commandLine.getForkCount().hasValue() ? options : options.forks(forks);
+	}
+
+	private static ChainedOptionsBuilder param(String name, String value, ChainedOptionsBuilder options,
+	    CommandLineOptions commandLine)
+	{
+		// JMH ignores a param that a benchmark does not declare.
+		return commandLine.getParameter(name).hasValue() ? options : options.param(name, value);
+	}
+
+	/** Adds the {@link MemoryProfiler}, unless the command line already asks for it. **/
+	static ChainedOptionsBuilder memoryProfiler(ChainedOptionsBuilder options,
+	    CommandLineOptions commandLine)
+	{
+		for (ProfilerConfig profiler : commandLine.getProfilers())
+		{
+			if (profiler.getKlass().equals(MemoryProfiler.class.getName()))
+				return options;
+		}
+		return options.addProfiler(MemoryProfiler.class);
+	}
+
+	/** Sets the iteration counts and times not given on the command line, a null time is left alone. **/
+	private static ChainedOptionsBuilder iterations(int warmups, TimeValue warmupTime, int measurements,
+	    TimeValue measurementTime, ChainedOptionsBuilder options, CommandLineOptions commandLine)
+	{
+		if (!commandLine.getWarmupIterations().hasValue())
+			options = options.warmupIterations(warmups);
+		if (warmupTime != null && !commandLine.getWarmupTime().hasValue())
+			options = options.warmupTime(warmupTime);
+		if (!commandLine.getMeasurementIterations().hasValue())
+			options = options.measurementIterations(measurements);
+		if (measurementTime != null && !commandLine.getMeasurementTime().hasValue())
+			options = options.measurementTime(measurementTime);
+		return options;
+	}
+}
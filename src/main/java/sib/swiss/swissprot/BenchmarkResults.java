@@ -0,0 +1,65 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Helpers shared by the runners to identify and judge JMH results across runs. **/
+package sib.swiss.swissprot;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+final class BenchmarkResults
+{
+	private BenchmarkResults()
+	{
+	}
+
+	/** @return true for throughput, where a higher score is better, false for the time modes */
+	static boolean higherIsBetter(Mode mode)
+	{
+		return mode == Mode.Throughput;
+	}
+
+	/** @return the benchmark name with its mode and parameters, which identifies a result across
+	 *         runs. A benchmark run in several modes gives one result per mode. */
+	static String key(BenchmarkParams params)
+	{
+		final StringBuilder key = new StringBuilder(params.getBenchmark()).append(' ').append(params.getMode()
+		    .shortLabel());
+		String separator = " (";
+		for (String name : params.getParamsKeys())
+		{
+			key.append(separator).append(name).append('=').append(params.getParam(name));
+			separator = ", ";
+		}
+		if (!params.getParamsKeys().isEmpty())
+			key.append(')');
+		return key.toString();
+	}
+
+	/** @return the key of the benchmark reduced to characters that are safe in a file name */
+	static String fileName(BenchmarkParams params)
+	{
+		return key(params).replaceAll("[^A-Za-z0-9._=-]+", "_");
+	}
+}
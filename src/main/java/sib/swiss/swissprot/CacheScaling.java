@@ -0,0 +1,123 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Runs the data scanning benchmarks over the working set ladder of {@link CacheSizes} and writes
+ * their throughput against working set size, as a table and as CSV for plotting. Next to the JMH
+ * score each point gives the bytes scanned per second, the bytes an operation scans times the
+ * operations per second, which shows where each benchmark falls off a cache level into main memory.
+ * An operation scans the working set, except for the primitive sorts of IntegerCompareViaSort that
+ * hold as many values as the boxed ones in fewer bytes. Benchmarks run in several modes get one
+ * row per mode.
+ *
+ * Usage: java -cp target/benchmarks.jar sib.swiss.swissprot.CacheScaling [--csv file] [JMH options
+ * and benchmark regexps] **/
+package sib.swiss.swissprot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class CacheScaling
+{
+	private static final String WORKING_SET = "workingSet";
+	private static final String DEFAULT_CSV = "cache-scaling.csv";
+	private static final String DEFAULT_INCLUDE = "\\.(GuanineCytosineCount|IntegerCompareViaSort|StudentCount(Boolean|Char|Integer))\\.";
+
+	public static void main(String[] args) throws IOException, RunnerException, CommandLineOptionException
+	{
+		File csv = new File(DEFAULT_CSV);
+		final List<String> jmhArgs = new ArrayList<>();
+		for (int i = 0; i < args.length; i++)
+		{
+			if ("--csv".equals(args[i]) && i + 1 < args.length)
+				csv = new File(args[++i]);
+			else
+				jmhArgs.add(args[i]);
+		}
+		final CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+		if (commandLine.getIncludes().isEmpty())
+			options = options.include(DEFAULT_INCLUDE);
+		final Collection<RunResult> results = new Runner(options.build()).run();
+
+		System.out.printf("L1 %d bytes, L2 %d bytes, L3 %d bytes%n%n", CacheSizes.size(1), CacheSizes.size(2),
+		    CacheSizes.size(3));
+		try (PrintWriter out = new PrintWriter(csv, StandardCharsets.UTF_8.name()))
+		{
+			out.println("benchmark,mode,workingSet,bytes,score,error,unit,bytesPerSecond");
+			for (RunResult result : results)
+			{
+				final BenchmarkParams params = result.getParams();
+				final String workingSet = params.getParam(WORKING_SET);
+				if (workingSet == null)
+					continue;
+				final long bytes = scannedBytes(params.getBenchmark(), workingSet);
+				final double score = result.getPrimaryResult().getScore();
+				final double bytesPerSecond = bytes * operationsPerSecond(params, score);
+				final String mode = params.getMode().shortLabel();
+				out.printf("%s,%s,%s,%d,%f,%f,%s,%f%n", params.getBenchmark(), mode, workingSet, bytes, score, result
+				    .getPrimaryResult().getScoreError(), result.getPrimaryResult().getScoreUnit(), bytesPerSecond);
+				System.out.printf("%-80s %-6s %-5s %12d B %16.3f %-8s %12.1f MB/s%n", params.getBenchmark(), mode,
+				    workingSet, bytes, score, result.getPrimaryResult().getScoreUnit(), bytesPerSecond / (1 << 20));
+			}
+		}
+		System.out.println("\nWritten to " + csv);
+	}
+
+	/** @return the bytes one operation of the benchmark scans, the working set unless the benchmark
+	 *         covers less of it */
+	static long scannedBytes(String benchmark, String workingSet)
+	{
+		if (benchmark.startsWith(IntegerCompareViaSort.class.getName() + "."))
+			return IntegerCompareViaSort.sortedBytes(benchmark, workingSet);
+		return CacheSizes.workingSetBytes(workingSet);
+	}
+
+	/** Converts a score to operations per second, from throughput or from time per operation. **/
+	static double operationsPerSecond(BenchmarkParams params, double score)
+	{
+		final double unitsPerSecond = TimeUnit.SECONDS.toNanos(1) / (double) params.getTimeUnit().toNanos(1);
+		if (params.getMode() == Mode.Throughput)
+			return score * unitsPerSecond;
+		final double seconds = score / unitsPerSecond;
+		if (params.getMode() == Mode.SingleShotTime)
+			return params.getMeasurement().getBatchSize() / seconds;
+		return 1 / seconds;
+	}
+}
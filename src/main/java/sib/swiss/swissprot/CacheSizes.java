@@ -0,0 +1,143 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Cache sizes of the machine, read from /sys/devices/system/cpu on Linux, and the working set
+ * ladder benchmarks use to step through them. A benchmark takes a workingSet @Param with the
+ * values L1, L2, L3 and DRAM and asks for the number of elements that fit. Each cache level gets
+ * half its capacity, so the data stays in that level without being evicted by everything else
+ * running, and DRAM gets four times the last level cache. A number of bytes, optionally with a K,
+ * M or G suffix, can be given instead of a level with -p workingSet=...
+ *
+ * Where the sizes can not be read, typical values of 32K, 256K and 8M are assumed. **/
+package sib.swiss.swissprot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public final class CacheSizes
+{
+	public static final String L1 = "L1";
+	public static final String L2 = "L2";
+	public static final String L3 = "L3";
+	public static final String DRAM = "DRAM";
+
+	private static final File CACHES = new File("/sys/devices/system/cpu/cpu0/cache");
+	private static final long[] DEFAULTS = { 32L << 10, 256L << 10, 8L << 20 };
+	private static final int DRAM_FACTOR = 4;
+	private static final long[] SIZES = read();
+
+	private CacheSizes()
+	{
+	}
+
+	/** @return the size in bytes of the data or unified cache at level 1, 2 or 3 */
+	public static long size(int level)
+	{
+		return SIZES[level - 1];
+	}
+
+	/** @return the bytes a benchmark should scan for the given level of the ladder, or the given
+	 *         number of bytes */
+	public static long workingSetBytes(String workingSet)
+	{
+		switch (workingSet)
+		{
+			case L1:
+				return size(1) / 2;
+			case L2:
+				return size(2) / 2;
+			case L3:
+				return size(3) / 2;
+			case DRAM:
+				return size(3) * DRAM_FACTOR;
+			default:
+				return parseBytes(workingSet);
+		}
+	}
+
+	/** @return the number of elements of the given size that make up the working set, at least one */
+	public static int elements(String workingSet, int bytesPerElement)
+	{
+		return (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, workingSetBytes(workingSet) / bytesPerElement));
+	}
+
+	static long parseBytes(String bytes)
+	{
+		final String trimmed = bytes.trim().toUpperCase();
+		final char unit = trimmed.isEmpty() ? ' ' : trimmed.charAt(trimmed.length() - 1);
+		final String digits = Character.isDigit(unit) ? trimmed : trimmed.substring(0, trimmed.length() - 1);
+		final long value;
+		try
+		{
+			value = Long.parseLong(digits);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Expected L1, L2, L3, DRAM or a number of bytes but got " + bytes, e);
+		}
+		switch (unit)
+		{
+			case 'K':
+				return value << 10;
+			case 'M':
+				return value << 20;
+			case 'G':
+				return value << 30;
+			default:
+				if (!Character.isDigit(unit))
+					throw new IllegalArgumentException("Unknown unit in " + bytes);
+				return value;
+		}
+	}
+
+	private static long[] read()
+	{
+		final long[] sizes = DEFAULTS.clone();
+		final File[] indexes = CACHES.listFiles((dir, name) -> name.startsWith("index"));
+		if (indexes == null)
+			return sizes;
+		for (File index : indexes)
+		{
+			try
+			{
+				final int level = Integer.parseInt(read(index, "level"));
+				if (level < 1 || level > sizes.length || "Instruction".equals(read(index, "type")))
+					continue;
+				sizes[level - 1] = parseBytes(read(index, "size"));
+			}
+			catch (IOException | IllegalArgumentException e)
+			{
+				// Keep the default for this level.
+			}
+		}
+		return sizes;
+	}
+
+	private static String read(File index, String name) throws IOException
+	{
+		return new String(Files.readAllBytes(new File(index, name).toPath()), StandardCharsets.US_ASCII).trim();
+	}
+}
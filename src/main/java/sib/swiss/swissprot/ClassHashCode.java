@@ -151,6 +151,18 @@ public class ClassHashCode {
 		}
 	}
 
+	@Setup
+	public void measureFootprint() {
+		// Setup methods run in no particular order, so classes may not be filled in yet.
+		final ClassHashCode sample = new ClassHashCode();
+		sample.setUp();
+		MemoryProfiler.recordFootprint(HeapMeasurement.bytesPerElement(() -> {
+			ClassHashCode chc = new ClassHashCode();
+			chc.setUp();
+			return chc.classCount;
+		}, sample.classes.length));
+	}
+
 	@TearDown
 	public void check() {
 		final int invocations = classCount.values().stream()
@@ -161,6 +173,7 @@ public class ClassHashCode {
 	}
 
 	@Benchmark
+	@AllocationBudget(0)
 	@Warmup(iterations = ITERATIONS, batchSize = INVOCATIONS)
 	@Measurement(iterations = 5, batchSize = INVOCATIONS)
 	@BenchmarkMode(Mode.SingleShotTime)
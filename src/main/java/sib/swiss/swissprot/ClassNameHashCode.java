@@ -42,6 +42,7 @@ public class ClassNameHashCode
 	private static final int ITERATIONS = 5;
 	private static final int INVOCATIONS = 50_000_000;
 	private Class<?>[] classes;
+	private String[] names;
 	private static final Random random = new Random();
 	private Map<String, Counter> classViaStringCount;
 
@@ -149,12 +150,27 @@ public class ClassNameHashCode
 		cl.add(SuppressWarnings.class);
 		classes = cl.toArray(new Class<?>[] {});
 		classViaStringCount = new HashMap<>();
-		for (Class<?> clazz : classes)
+		names = new String[classes.length];
+		for (int i = 0; i < classes.length; i++)
 		{
-			classViaStringCount.put(clazz.getName(), new Counter());
+			names[i] = classes[i].getName();
+			classViaStringCount.put(names[i], new Counter());
 		}
 	}
 
+	@Setup
+	public void measureFootprint()
+	{
+		// Setup methods run in no particular order, so classes may not be filled in yet.
+		final ClassNameHashCode sample = new ClassNameHashCode();
+		sample.setUp();
+		MemoryProfiler.recordFootprint(HeapMeasurement.bytesPerElement(() -> {
+			ClassNameHashCode cnhc = new ClassNameHashCode();
+			cnhc.setUp();
+			return cnhc.classViaStringCount;
+		}, sample.classes.length));
+	}
+
 	@TearDown
 	public void check()
 	{
@@ -166,6 +182,7 @@ public class ClassNameHashCode
 	}
 
 	@Benchmark
+	@AllocationBudget(0)
 	@Warmup(iterations = ITERATIONS, batchSize = INVOCATIONS)
 	@Measurement(iterations = 5, batchSize = INVOCATIONS)
 	@BenchmarkMode(Mode.SingleShotTime)
@@ -176,6 +193,19 @@ public class ClassNameHashCode
 		counter.run();
 	}
 
+	/** Same selection as countClassSeenViaRandomSelection but with the names looked up once in
+	 * setUp, so the hot path can not allocate in Class.getName on any JVM. **/
+	@Benchmark
+	@AllocationBudget(0)
+	@Warmup(iterations = ITERATIONS, batchSize = INVOCATIONS)
+	@Measurement(iterations = 5, batchSize = INVOCATIONS)
+	@BenchmarkMode(Mode.SingleShotTime)
+	public void countClassSeenViaPrecomputedName()
+	{
+		final Counter counter = classViaStringCount.get(names[random.nextInt(names.length)]);
+		counter.run();
+	}
+
 	static class Counter
 	{
 		private int count = 0;
@@ -0,0 +1,148 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Threads each updating their own counter, with the counters stored in four ways: small atomic
+ * counter objects allocated next to each other as in ClassHashCode, {@link PaddedCounter}s, and a
+ * {@link CounterBank} with and without padding. The unpadded layouts put several counters on one
+ * cache line, so the threads fight over lines they do not logically share.
+ *
+ * Runs on every available CPU by default, pass -t 1, -t 2 and so on to see how each layout scales
+ * with the number of threads. **/
+package sib.swiss.swissprot;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+
+@State(Scope.Benchmark)
+@Threads(Threads.MAX)
+public class ConcurrentCounterUpdates
+{
+	@Param({ "64" })
+	int keys;
+
+	Counter[] counters;
+	PaddedCounter[] paddedCounters;
+	CounterBank paddedBank;
+	CounterBank packedBank;
+
+	@Setup
+	public void setUp()
+	{
+		counters = new Counter[keys];
+		paddedCounters = new PaddedCounter[keys];
+		// Separate loops, so that the unpadded counters are bump allocated next to each other.
+		for (int i = 0; i < keys; i++)
+		{
+			counters[i] = new Counter();
+		}
+		for (int i = 0; i < keys; i++)
+		{
+			paddedCounters[i] = new PaddedCounter();
+		}
+		paddedBank = new CounterBank(keys, true);
+		packedBank = new CounterBank(keys, false);
+	}
+
+	/** All four layouts share this state, so measure the one the running benchmark updates. **/
+	@Setup
+	public void measureFootprint(BenchmarkParams params)
+	{
+		final String benchmark = params.getBenchmark();
+		MemoryProfiler.recordFootprint(HeapMeasurement.bytesPerElement(() -> {
+			ConcurrentCounterUpdates ccu = new ConcurrentCounterUpdates();
+			ccu.keys = keys;
+			ccu.setUp();
+			if (benchmark.endsWith("UnpaddedObjects"))
+				return ccu.counters;
+			else if (benchmark.endsWith("PaddedObjects"))
+				return ccu.paddedCounters;
+			else if (benchmark.endsWith("PaddedBank"))
+				return ccu.paddedBank;
+			else
+				return ccu.packedBank;
+		}, keys));
+	}
+
+	@State(Scope.Thread)
+	public static class Key
+	{
+		int index;
+
+		@Setup
+		public void setUp(ThreadParams thread, ConcurrentCounterUpdates shared)
+		{
+			index = thread.getThreadIndex() % shared.keys;
+		}
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public long incrementUnpaddedObjects(Key key)
+	{
+		return counters[key.index].increment();
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public long incrementPaddedObjects(Key key)
+	{
+		return paddedCounters[key.index].increment();
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public long incrementPaddedBank(Key key)
+	{
+		return paddedBank.increment(key.index);
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public long incrementPackedBank(Key key)
+	{
+		return packedBank.increment(key.index);
+	}
+
+	static class Counter
+	{
+		private static final AtomicLongFieldUpdater<Counter> COUNT = AtomicLongFieldUpdater.newUpdater(
+		    Counter.class, "count");
+
+		private volatile long count = 0;
+
+		long increment()
+		{
+			return COUNT.incrementAndGet(this);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** A fixed number of counters addressed by index, for statistics over a key set known up front
+ * such as the classes in ClassHashCode. Keys are mapped to an index once, after that an update is
+ * an atomic add into one long array with no per key object to chase.
+ *
+ * Padded banks place counters 128 bytes apart, and leave 128 bytes free at each end of the array,
+ * so that threads updating different counters do not share cache lines. Unpadded banks pack the
+ * counters next to each other, eight to a 64 byte line. **/
+package sib.swiss.swissprot;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class CounterBank
+{
+	/** 128 bytes of longs. **/
+	static final int PADDED_STRIDE = 16;
+
+	private final AtomicLongArray counts;
+	private final int stride;
+	private final int offset;
+	private final int size;
+
+	public CounterBank(int size, boolean padded)
+	{
+		if (size < 0)
+			throw new IllegalArgumentException("size must not be negative " + size);
+		this.size = size;
+		this.stride = padded ? PADDED_STRIDE : 1;
+		this.offset = padded ? PADDED_STRIDE : 0;
+		this.counts = new AtomicLongArray(offset * 2 + size * stride);
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public long increment(int index)
+	{
+		return counts.incrementAndGet(slot(index));
+	}
+
+	public long add(int index, long delta)
+	{
+		return counts.addAndGet(slot(index), delta);
+	}
+
+	public long get(int index)
+	{
+		return counts.get(slot(index));
+	}
+
+	/** @return the sum of all counters, not an atomic snapshot while they are being updated */
+	public long sum()
+	{
+		long sum = 0;
+		for (int i = 0; i < size; i++)
+		{
+			sum += counts.get(slot(i));
+		}
+		return sum;
+	}
+
+	private int slot(int index)
+	{
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("index " + index + " size " + size);
+		return offset + index * stride;
+	}
+}
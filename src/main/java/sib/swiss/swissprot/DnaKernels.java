@@ -0,0 +1,172 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Kernels run over DNA held in ByteBuffers, as in GuanineCytosineCount, after the nucleotide
+ * counts: reverse complement and translation into amino acids. All of them use absolute indexes,
+ * so they leave buffer positions alone and allocate nothing.
+ *
+ * Reverse complement comes in two flavours. The table versions look every byte up in a 256 entry
+ * complement table. The word at a time versions read eight bytes as a long, reverse them with
+ * Long.reverseBytes and complement all eight at once. That works because in ASCII, upper or lower
+ * case, bit 3 is set only for N, and bit 1 is set for C and G but not for A and T. A and T differ
+ * by 0x15, C and G by 0x04, so these two bits say what to XOR each byte with. Bytes other than
+ * ACGTN come out undefined from the word versions, while the table leaves them as they are.
+ *
+ * Translation encodes each base in two bits, A=0 C=1 G=2 T=3, and looks the six bit codon up in a
+ * 64 entry table of the standard genetic code. A codon containing anything else translates to X. **/
+package sib.swiss.swissprot;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public final class DnaKernels
+{
+	private static final byte[] COMPLEMENT = new byte[256];
+	private static final int[] ENCODE = new int[256];
+	private static final int NOT_ACGT = 0x40;
+	/** Amino acids of the codons in ACGT order, AAA, AAC, AAG, AAT, ACA and so on, stop is *. **/
+	private static final byte[] CODONS = "KNKNTTTTRSRSIIMIQHQHPPPPRRRRLLLLEDEDAAAAGGGGVVVV*Y*YSSSS*CWCLFLF"
+	    .getBytes(StandardCharsets.US_ASCII);
+	static final byte UNKNOWN_AMINO_ACID = 'X';
+
+	private static final long LOW_BITS = 0x0101010101010101L;
+	private static final long AT_FLIP = 0x15;
+	private static final long CG_FLIP = 0x04;
+
+	static
+	{
+		for (int i = 0; i < COMPLEMENT.length; i++)
+		{
+			COMPLEMENT[i] = (byte) i;
+			ENCODE[i] = NOT_ACGT;
+		}
+		pair('a', 't');
+		pair('c', 'g');
+		pair('A', 'T');
+		pair('C', 'G');
+		final String bases = "ACGT";
+		for (int i = 0; i < bases.length(); i++)
+		{
+			ENCODE[bases.charAt(i)] = i;
+			ENCODE[Character.toLowerCase(bases.charAt(i))] = i;
+		}
+	}
+
+	private static void pair(char a, char b)
+	{
+		COMPLEMENT[a] = (byte) b;
+		COMPLEMENT[b] = (byte) a;
+	}
+
+	private DnaKernels()
+	{
+	}
+
+	/** Reverse complements the bytes from (inclusive) to (exclusive) in place, using the table. **/
+	public static void reverseComplementInPlace(ByteBuffer dna, int from, int to)
+	{
+		int i = from, j = to - 1;
+		for (; i < j; i++, j--)
+		{
+			final byte left = dna.get(i);
+			dna.put(i, COMPLEMENT[dna.get(j) & 0xFF]);
+			dna.put(j, COMPLEMENT[left & 0xFF]);
+		}
+		if (i == j)
+			dna.put(i, COMPLEMENT[dna.get(i) & 0xFF]);
+	}
+
+	/** Writes the reverse complement of the bytes from (inclusive) to (exclusive) of source into
+	 * target starting at at, using the table. **/
+	public static void reverseComplement(ByteBuffer source, int from, int to, ByteBuffer target, int at)
+	{
+		final int last = at + (to - from) - 1;
+		for (int i = from; i < to; i++)
+		{
+			target.put(last - (i - from), COMPLEMENT[source.get(i) & 0xFF]);
+		}
+	}
+
+	/** Reverse complements the bytes from (inclusive) to (exclusive) in place, eight at a time. **/
+	public static void reverseComplementInPlaceWordAtATime(ByteBuffer dna, int from, int to)
+	{
+		int i = from, j = to;
+		for (; j - i >= 2 * Long.BYTES; i += Long.BYTES, j -= Long.BYTES)
+		{
+			final long left = dna.getLong(i);
+			final long right = dna.getLong(j - Long.BYTES);
+			dna.putLong(i, reverseComplement(right));
+			dna.putLong(j - Long.BYTES, reverseComplement(left));
+		}
+		reverseComplementInPlace(dna, i, j);
+	}
+
+	/** Writes the reverse complement of the bytes from (inclusive) to (exclusive) of source into
+	 * target starting at at, eight at a time. Both buffers must have the same byte order, as a word
+	 * is read in the order of one and written in the order of the other. **/
+	public static void reverseComplementWordAtATime(ByteBuffer source, int from, int to, ByteBuffer target, int at)
+	{
+		if (source.order() != target.order())
+		{
+			reverseComplement(source, from, to, target, at);
+			return;
+		}
+		final int length = to - from;
+		final int end = at + length;
+		int k = 0;
+		for (; k + Long.BYTES <= length; k += Long.BYTES)
+		{
+			target.putLong(end - k - Long.BYTES, reverseComplement(source.getLong(from + k)));
+		}
+		reverseComplement(source, from + k, to, target, at);
+	}
+
+	/** Reverses the eight bytes of a word and complements each of them. **/
+	static long reverseComplement(long word)
+	{
+		final long reversed = Long.reverseBytes(word);
+		final long isN = (reversed >>> 3) & LOW_BITS;
+		final long isCG = (reversed >>> 1) & LOW_BITS & ~isN;
+		final long isAT = ~(reversed >>> 1) & LOW_BITS & ~isN;
+		return reversed ^ (isCG * CG_FLIP) ^ (isAT * AT_FLIP);
+	}
+
+	/** Translates the codons from (inclusive) to (exclusive) of dna into one letter amino acid codes
+	 * written into protein starting at at. Any trailing partial codon is ignored.
+	 *
+	 * @return the number of amino acids written */
+	public static int translate(ByteBuffer dna, int from, int to, ByteBuffer protein, int at)
+	{
+		final int codons = (to - from) / 3;
+		for (int c = 0, i = from; c < codons; c++, i += 3)
+		{
+			final int first = ENCODE[dna.get(i) & 0xFF];
+			final int second = ENCODE[dna.get(i + 1) & 0xFF];
+			final int third = ENCODE[dna.get(i + 2) & 0xFF];
+			final int codon = (first << 4) | (second << 2) | third;
+			protein.put(at + c, ((first | second | third) & NOT_ACGT) == 0 ? CODONS[codon] : UNKNOWN_AMINO_ACID);
+		}
+		return codons;
+	}
+}
@@ -0,0 +1,98 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** The executors the parallel benchmarks can fan their chunk tasks out on. A fork join pool and a
+ * fixed pool of platform threads get one thread per processor, virtual threads get a new thread
+ * per task carried by the JDK's own fork join scheduler.
+ *
+ * Virtual threads need JDK 21 or later while the code is built for Java 8, so their executor is
+ * looked up by reflection and throws an UnsupportedOperationException on older JDKs. The
+ * benchmarks therefore default to the fork join and platform pools, add virtual threads on JDK 21
+ * with -p executor=FORK_JOIN,PLATFORM,VIRTUAL. **/
+package sib.swiss.swissprot;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+public enum ExecutionMode
+{
+	FORK_JOIN
+	{
+		@Override
+		public ExecutorService create(int parallelism)
+		{
+			return new ForkJoinPool(parallelism);
+		}
+	},
+	PLATFORM
+	{
+		@Override
+		public ExecutorService create(int parallelism)
+		{
+			return Executors.newFixedThreadPool(parallelism);
+		}
+	},
+	VIRTUAL
+	{
+		/** Virtual threads are not pooled, the scheduler decides the parallelism. **/
+		@Override
+		public ExecutorService create(int parallelism)
+		{
+			try
+			{
+				return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			}
+			catch (NoSuchMethodException e)
+			{
+				throw new UnsupportedOperationException("Virtual threads need JDK 21 or later, this is "
+				    + System.getProperty("java.version"), e);
+			}
+			catch (IllegalAccessException | InvocationTargetException e)
+			{
+				throw new IllegalStateException("Can not create a virtual thread executor", e);
+			}
+		}
+	};
+
+	/** @return a new executor, to be shut down with {@link #shutdown(ExecutorService)} */
+	public abstract ExecutorService create(int parallelism);
+
+	/** Stops the executor and waits for its running tasks to finish. **/
+	public static void shutdown(ExecutorService executor)
+	{
+		executor.shutdownNow();
+		try
+		{
+			if (!executor.awaitTermination(1, TimeUnit.MINUTES))
+				throw new IllegalStateException("Executor did not terminate " + executor);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -36,6 +36,7 @@ package sib.swiss.swissprot;
 
 import org.openjdk.jmh.annotations.*;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Random;
 
 
@@ -47,12 +48,16 @@ public class GuanineCytosineCount
 	private static final char THREOSINE = 't';
 	private static final char CYTOSINE = 'c';
 	private static final char ADENINE = 'a';
-	private static final int size = 2 * 1024 * 10;
+	@Param({ CacheSizes.L1, CacheSizes.L2, CacheSizes.L3, CacheSizes.DRAM })
+	String workingSet = CacheSizes.L1;
+	private int size;
 	private ByteBuffer dna;
+	private final int[] nucleotides = new int[256];
 
 	@Setup
 	public void setUp()
 	{
+		size = CacheSizes.elements(workingSet, 1);
 		dna = ByteBuffer.allocateDirect(size);
 		Random random = new Random();
 		for (int i = 0; i < size; i++)
@@ -81,6 +86,17 @@ public class GuanineCytosineCount
 		}
 	}
 
+	@Setup
+	public void measureFootprint()
+	{
+		MemoryProfiler.recordFootprint(HeapMeasurement.bytesPerElement(() -> {
+			GuanineCytosineCount gcc = new GuanineCytosineCount();
+			gcc.workingSet = workingSet;
+			gcc.setUp();
+			return gcc.dna;
+		}, CacheSizes.elements(workingSet, 1)));
+	}
+
 	@TearDown
 	public void tearDown()
 	{
@@ -88,6 +104,7 @@ public class GuanineCytosineCount
 	}
 
 	@Benchmark
+	@AllocationBudget(0)
 	public int countUsingSimpleIfStatements()
 	{
 		int a = 0, c = 0, g = 0, t = 0, n = 0;
@@ -112,6 +129,7 @@ public class GuanineCytosineCount
 	}
 
 	@Benchmark
+	@AllocationBudget(0)
 	public int countUsingSimpleBooleanToIntConversionStatements()
 	{
 		int a = 0, c = 0, g = 0, t = 0, n = 0;
@@ -130,6 +148,7 @@ public class GuanineCytosineCount
 	}
 
 	@Benchmark
+	@AllocationBudget(0)
 	public int countUsingSwitchStatements()
 	{
 		int a = 0, c = 0, g = 0, t = 0, n = 0;
@@ -173,4 +192,21 @@ public class GuanineCytosineCount
 		assert count == size : "count should equals the array size";
 		return count;
 	}
+
+	/** Same as countUsingAnArray but clears an array owned by the state instead of allocating one
+	 * per call. **/
+	@Benchmark
+	@AllocationBudget(0)
+	public int countUsingAReusedArray()
+	{
+		Arrays.fill(nucleotides, 0);
+		for (int i = 0; i < size; i++)
+		{
+			int nucleotide = dna.get(i);
+			nucleotides[nucleotide]++;
+		}
+		int count = nucleotides['a'] + nucleotides['c'] + nucleotides['g'] + nucleotides['t'] + nucleotides['n'];
+		assert count == size : "count should equals the array size";
+		return count;
+	}
 }
@@ -0,0 +1,119 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Measures memory from inside the benchmark JVM. Heap use is read from the MemoryMXBean and
+ * Runtime after asking for a full GC until the numbers settle, direct buffer use from the "direct"
+ * BufferPoolMXBean and per thread allocation from the HotSpot ThreadMXBean extension. These are
+ * estimates, a concurrent collector or a JIT compiling in the background can still move them by a
+ * few kilobytes. **/
+package sib.swiss.swissprot;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.function.Supplier;
+
+public final class HeapMeasurement
+{
+	private static final int MAX_GC_ATTEMPTS = 10;
+	private static final long MIN_ELEMENTS_MEASURED = 1_000_000;
+	private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private HeapMeasurement()
+	{
+	}
+
+	/** @return bytes in use on the heap, after collecting garbage until two snapshots agree */
+	public static long usedHeap()
+	{
+		long used = snapshot();
+		for (int i = 0; i < MAX_GC_ATTEMPTS; i++)
+		{
+			System.gc();
+			long after = snapshot();
+			if (after == used)
+				break;
+			used = after;
+		}
+		return used;
+	}
+
+	/** @return bytes used by direct ByteBuffers, or 0 if the JVM does not report them */
+	public static long usedDirect()
+	{
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+		{
+			if ("direct".equals(pool.getName()))
+				return pool.getMemoryUsed();
+		}
+		return 0;
+	}
+
+	/** @return bytes allocated on the heap by the thread so far, or -1 if the JVM can not tell */
+	public static long threadAllocatedBytes(Thread thread)
+	{
+		if (THREADS instanceof com.sun.management.ThreadMXBean)
+		{
+			com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) THREADS;
+			if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled())
+				return hotspot.getThreadAllocatedBytes(thread.getId());
+		}
+		return -1;
+	}
+
+	/** Builds a structure and measures how many heap and direct bytes it keeps alive. Small
+	 * structures are built several times over, so that the few kilobytes of noise in a heap snapshot
+	 * do not swamp the measurement.
+	 *
+	 * @return the retained bytes divided by the number of elements */
+	public static double bytesPerElement(Supplier<?> build, long elements)
+	{
+		final int copies = (int) Math.max(1, MIN_ELEMENTS_MEASURED / elements);
+		final Object[] built = new Object[copies];
+		long heapBefore = usedHeap();
+		long directBefore = usedDirect();
+		for (int i = 0; i < copies; i++)
+		{
+			built[i] = build.get();
+		}
+		long retained = (usedHeap() - heapBefore) + (usedDirect() - directBefore);
+		// Keep the structures reachable until after the second snapshot.
+		for (Object b : built)
+		{
+			if (b == null)
+				throw new IllegalStateException("nothing was built to measure");
+		}
+		return Math.max(0, retained) / (double) (elements * copies);
+	}
+
+	private static long snapshot()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		long fromRuntime = runtime.totalMemory() - runtime.freeMemory();
+		long fromBean = MEMORY.getHeapMemoryUsage().getUsed();
+		return Math.min(fromRuntime, fromBean);
+	}
+}
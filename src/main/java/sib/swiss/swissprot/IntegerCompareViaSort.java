@@ -37,27 +37,78 @@ package sib.swiss.swissprot;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.IntBinaryOperator;
 
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.BenchmarkParams;
 
 
 @State(Scope.Thread)
 public class IntegerCompareViaSort
 {
-	private static final int size = 2_000;
-	private List<Integer> list = new ArrayList<>(size);
+	/** An Integer and its reference in the list, with compressed oops. The primitive variants sort
+	 * the same number of values, so their working set is smaller. **/
+	static final int BYTES_PER_INTEGER = 20;
+	/** An int in the array and its slot in the scratch array. **/
+	static final int BYTES_PER_PRIMITIVE = 8;
+	private static final int INSERTION_SORT_THRESHOLD = 32;
+
+	@Param({ CacheSizes.L1, CacheSizes.L2, CacheSizes.L3, CacheSizes.DRAM })
+	String workingSet = CacheSizes.L1;
+	private int size;
+	private List<Integer> list;
+	private int[] array;
+	private int[] scratch;
 
 	@Setup
 	public void setUp()
 	{
+		size = CacheSizes.elements(workingSet, BYTES_PER_INTEGER);
+		list = new ArrayList<>(size);
+		array = new int[size];
+		scratch = new int[size];
 		for (int i = 0; i < size; i++)
 		{
 			list.add(i);
 		}
 		Collections.shuffle(list);
+		for (int i = 0; i < size; i++)
+		{
+			array[i] = list.get(i);
+		}
+	}
+
+	/** The boxed list and the primitive arrays share this state, so measure the ones the running
+	 * benchmark sorts. **/
+	@Setup
+	public void measureFootprint(BenchmarkParams params)
+	{
+		final boolean primitives = usesPrimitives(params.getBenchmark());
+		MemoryProfiler.recordFootprint(HeapMeasurement.bytesPerElement(() -> {
+			IntegerCompareViaSort icvs = new IntegerCompareViaSort();
+			icvs.workingSet = workingSet;
+			icvs.setUp();
+			if (primitives)
+				return new int[][] { icvs.array, icvs.scratch };
+			return icvs.list;
+		}, CacheSizes.elements(workingSet, BYTES_PER_INTEGER)));
+	}
+
+	static boolean usesPrimitives(String benchmark)
+	{
+		return benchmark.endsWith("SortPrimitivesThenCount");
+	}
+
+	/** @return the bytes the benchmark sorts, less than the working set for the primitive variants
+	 *         as they sort as many values as the boxed ones */
+	static long sortedBytes(String benchmark, String workingSet)
+	{
+		final long elements = CacheSizes.elements(workingSet, BYTES_PER_INTEGER);
+		return elements * (usesPrimitives(benchmark) ? BYTES_PER_PRIMITIVE : BYTES_PER_INTEGER);
 	}
 
 	@Benchmark
@@ -74,6 +125,69 @@ public class IntegerCompareViaSort
 		return list.stream().mapToInt(Integer::intValue).sum();
 	}
 
+	@Benchmark
+	@AllocationBudget(0)
+	public int integerCompareSortPrimitivesThenCount()
+	{
+		sort(array, scratch, 0, size, IntegerCompareViaSort::compareByBranches);
+		return sum(array);
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public int aMinusBCompareSortPrimitivesThenCount()
+	{
+		sort(array, scratch, 0, size, IntegerCompareViaSort::compareBySubtraction);
+		return sum(array);
+	}
+
+	/** A merge sort of an int[] with a comparator, so that neither the values nor the comparisons
+	 * are boxed. Like the TimSort behind List.sort it does only a linear number of comparisons on
+	 * already sorted input, which is what the benchmarks see after their first invocation. The
+	 * scratch array is as long as the array and owned by the caller, so nothing is allocated. **/
+	static void sort(int[] a, int[] scratch, int from, int to, IntBinaryOperator comparator)
+	{
+		if (to - from <= INSERTION_SORT_THRESHOLD)
+		{
+			for (int i = from + 1; i < to; i++)
+			{
+				int value = a[i];
+				int j = i - 1;
+				while (j >= from && comparator.applyAsInt(a[j], value) > 0)
+				{
+					a[j + 1] = a[j];
+					j--;
+				}
+				a[j + 1] = value;
+			}
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		sort(a, scratch, from, middle, comparator);
+		sort(a, scratch, middle, to, comparator);
+		if (comparator.applyAsInt(a[middle - 1], a[middle]) <= 0)
+			return;
+		System.arraycopy(a, from, scratch, from, to - from);
+		int left = from, right = middle;
+		for (int i = from; i < to; i++)
+		{
+			if (right >= to || (left < middle && comparator.applyAsInt(scratch[left], scratch[right]) <= 0))
+				a[i] = scratch[left++];
+			else
+				a[i] = scratch[right++];
+		}
+	}
+
+	private static int sum(int[] values)
+	{
+		int sum = 0;
+		for (int value : values)
+		{
+			sum += value;
+		}
+		return sum;
+	}
+
 	public static int compareBySubtraction(int x, int y)
 	{
 		return x - y;
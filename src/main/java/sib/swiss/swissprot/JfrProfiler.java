@@ -0,0 +1,291 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** A JMH profiler recording each forked JVM with JFR, so that a benchmark number that moves comes
+ * with evidence of why. The recording is started with a JVM option appended to the fork, and the
+ * measurement iterations are marked with a {@link MeasurementPhase} event. After the fork the
+ * events of the measurement iterations are summarised: the hottest methods by execution samples
+ * in which they are on top of the stack, the allocation sites by bytes allocated, the GC pauses and
+ * the time spent in safepoints, from the start of each safepoint to the end of its VM operation.
+ * Samples and allocations on the threads of the JMH harness, the JVM, its compilers including
+ * Graal on JVMCI and JFR are left out, so that work the benchmark hands to pools of its own is
+ * still counted.
+ *
+ * The summary is added to the benchmark report and written as a text file next to the recording
+ * in the output directory. Like {@link JitProfiler} it needs a JVM with JFR and the
+ * jdk.jfr.consumer API (8u262 or later).
+ *
+ * Usage: java -jar target/benchmarks.jar GuanineCytosineCount -prof sib.swiss.swissprot.JfrProfiler
+ * or -prof sib.swiss.swissprot.JfrProfiler:dir=jfr-profile;top=10 **/
+package sib.swiss.swissprot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+import org.openjdk.jmh.results.TextResult;
+
+public class JfrProfiler extends JfrRecordingProfiler
+{
+	private static final String DEFAULT_DIR = "jfr-profile";
+	private static final int DEFAULT_TOP = 10;
+	private static final String SETTINGS = "profile.jfc";
+	private static final String ALLOCATION_SAMPLE = "jdk.ObjectAllocationSample";
+	/** Threads of the JMH harness, the JVM and JFR itself, whatever else runs is the benchmark's. **/
+	private static final String[] INFRASTRUCTURE_THREADS = { "main", "JFR ", "JMH", "C1 CompilerThread",
+	    "C2 CompilerThread", "JVMCI", "Reference Handler", "Finalizer", "Signal Dispatcher", "Common-Cleaner",
+	    "Attach Listener", "Notification Thread", "Service Thread" };
+
+	private final int top;
+
+	public JfrProfiler()
+	{
+		this("");
+	}
+
+	public JfrProfiler(String options)
+	{
+		super(new File(option(options, "dir", DEFAULT_DIR)), SETTINGS);
+		top = Integer.parseInt(option(options, "top", Integer.toString(DEFAULT_TOP)));
+	}
+
+	/** @return the value of the named option, which is one of dir or top, or otherwise if not given */
+	private static String option(String options, String name, String otherwise)
+	{
+		String value = otherwise;
+		for (String option : options.split("[,;]"))
+		{
+			if (option.startsWith(name + "="))
+				value = option.substring(name.length() + 1);
+			else if (!option.isEmpty() && !option.startsWith("dir=") && !option.startsWith("top="))
+				throw new IllegalArgumentException("Unknown option " + option
+				    + " expected dir=<directory> or top=<lines>");
+		}
+		return value;
+	}
+
+	@Override
+	public String getDescription()
+	{
+		return "Hot methods, allocation sites, GC pauses and safepoint time from a JFR recording";
+	}
+
+	@Override
+	public Collection<? extends Result> afterTrial(BenchmarkResult result, long pid, File stdOut, File stdErr)
+	{
+		final File summaryFile = new File(recording().getPath().replaceFirst("\\.jfr$", ".txt"));
+		try
+		{
+			final List<Result<?>> summary = summarise(RecordingFile.readAllEvents(recording().toPath()));
+			try (PrintWriter out = new PrintWriter(summaryFile, StandardCharsets.UTF_8.name()))
+			{
+				out.println(BenchmarkResults.key(result.getParams()));
+				for (Result<?> line : summary)
+				{
+					if (line instanceof TextResult)
+						out.print(((TextResult) line).extendedInfo());
+				}
+			}
+			return summary;
+		}
+		catch (IOException e)
+		{
+			return Collections.singletonList(new TextResult("Could not summarise " + recording() + ": " + e, "jfr"));
+		}
+	}
+
+	List<Result<?>> summarise(List<RecordedEvent> events)
+	{
+		Instant measureStart = Instant.MIN;
+		Instant measureEnd = Instant.MAX;
+		boolean sampledAllocations = false;
+		for (RecordedEvent event : events)
+		{
+			if (MEASUREMENT_PHASE.equals(event.getEventType().getName()))
+			{
+				measureStart = event.getStartTime();
+				measureEnd = event.getEndTime();
+			}
+			else if (ALLOCATION_SAMPLE.equals(event.getEventType().getName()))
+				sampledAllocations = true;
+		}
+
+		final Map<String, Long> hotMethods = new HashMap<>();
+		final Map<String, Long> allocationSites = new HashMap<>();
+		long samples = 0;
+		long allocated = 0;
+		int collections = 0;
+		Duration gcPauses = Duration.ZERO;
+		Duration longestGcPause = Duration.ZERO;
+		final Map<Long, Instant> safepointStarts = new HashMap<>();
+		final Map<Long, Instant> safepointEnds = new HashMap<>();
+		for (RecordedEvent event : events)
+		{
+			// A safepoint that begins while measuring may end after it.
+			if ("jdk.SafepointEnd".equals(event.getEventType().getName()))
+			{
+				safepointEnds.put(event.getLong("safepointId"), event.getEndTime());
+				continue;
+			}
+			final Instant at = event.getStartTime();
+			if (at.isBefore(measureStart) || at.isAfter(measureEnd))
+				continue;
+			switch (event.getEventType().getName())
+			{
+				case "jdk.ExecutionSample":
+					if (!onBenchmarkThread(event, "sampledThread"))
+						break;
+					samples++;
+					hotMethods.merge(topFrame(event.getStackTrace()), 1L, Long::sum);
+					break;
+				case ALLOCATION_SAMPLE:
+					allocated += allocation(allocationSites, event, event.getLong("weight"));
+					break;
+				case "jdk.ObjectAllocationInNewTLAB":
+					// Each event stands for the whole new TLAB, not only the object that asked for it.
+					if (!sampledAllocations)
+						allocated += allocation(allocationSites, event, event.getLong("tlabSize"));
+					break;
+				case "jdk.ObjectAllocationOutsideTLAB":
+					if (!sampledAllocations)
+						allocated += allocation(allocationSites, event, event.getLong("allocationSize"));
+					break;
+				case "jdk.GarbageCollection":
+				{
+					collections++;
+					final Duration pauses = event.getDuration("sumOfPauses");
+					gcPauses = gcPauses.plus(pauses);
+					final Duration longest = event.getDuration("longestPause");
+					if (longest.compareTo(longestGcPause) > 0)
+						longestGcPause = longest;
+					break;
+				}
+				case "jdk.SafepointBegin":
+					// Only covers reaching the safepoint, the VM operation runs until the end event.
+					safepointStarts.put(event.getLong("safepointId"), at);
+					break;
+				default:
+			}
+		}
+
+		int safepoints = 0;
+		Duration safepointTime = Duration.ZERO;
+		for (Map.Entry<Long, Instant> start : safepointStarts.entrySet())
+		{
+			final Instant end = safepointEnds.get(start.getKey());
+			if (end == null)
+				continue;
+			safepoints++;
+			safepointTime = safepointTime.plus(Duration.between(start.getValue(), end));
+		}
+
+		final StringBuilder text = new StringBuilder();
+		text.append("Hot methods, ").append(samples).append(" execution samples while measuring:\n");
+		appendTop(text, hotMethods, samples, "samples");
+		text.append("Allocation sites, ").append(allocated).append(" bytes")
+		    .append(sampledAllocations ? " estimated from samples" : " in TLABs and outside").append(":\n");
+		appendTop(text, allocationSites, allocated, "bytes");
+		text.append("GC: ").append(collections).append(" collections, ").append(millis(gcPauses))
+		    .append(" ms paused, longest pause ").append(millis(longestGcPause)).append(" ms\n");
+		text.append("Safepoints: ").append(safepoints).append(", ").append(millis(safepointTime)).append(" ms\n");
+		text.append("Recording: ").append(recording()).append('\n');
+
+		return Arrays.asList(new ScalarResult("jfr.gc.pause", millis(gcPauses), "ms", AggregationPolicy.AVG),
+		    new ScalarResult("jfr.safepoint", millis(safepointTime), "ms", AggregationPolicy.AVG), new TextResult(
+		        text.toString(), "jfr"));
+	}
+
+	private static long allocation(Map<String, Long> sites, RecordedEvent event, long bytes)
+	{
+		if (!onBenchmarkThread(event, "eventThread"))
+			return 0;
+		final RecordedClass objectClass = event.getClass("objectClass");
+		final String type = objectClass == null ? "?" : objectClass.getName();
+		sites.merge(type + " at " + topFrame(event.getStackTrace()), bytes, Long::sum);
+		return bytes;
+	}
+
+	private static boolean onBenchmarkThread(RecordedEvent event, String field)
+	{
+		final RecordedThread thread = event.getThread(field);
+		if (thread == null || thread.getJavaName() == null)
+			return false;
+		for (String infrastructure : INFRASTRUCTURE_THREADS)
+		{
+			if (thread.getJavaName().startsWith(infrastructure))
+				return false;
+		}
+		return true;
+	}
+
+	private static String topFrame(RecordedStackTrace stackTrace)
+	{
+		if (stackTrace == null || stackTrace.getFrames().isEmpty())
+			return "?";
+		final RecordedFrame frame = stackTrace.getFrames().get(0);
+		if (frame.getMethod() == null)
+			return "?";
+		return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + " line "
+		    + frame.getLineNumber();
+	}
+
+	private void appendTop(StringBuilder text, Map<String, Long> counts, long total, String unit)
+	{
+		final List<Map.Entry<String, Long>> sorted = new ArrayList<>(counts.entrySet());
+		sorted.sort(Map.Entry.<String, Long> comparingByValue().reversed());
+		for (Map.Entry<String, Long> entry : sorted.subList(0, Math.min(top, sorted.size())))
+		{
+			text.append(String.format("  %5.1f%% %12d %s %s%n", 100.0 * entry.getValue() / Math.max(1, total),
+			    entry.getValue(), unit, entry.getKey()));
+		}
+		if (sorted.size() > top)
+			text.append("  ... ").append(sorted.size() - top).append(" more\n");
+	}
+
+	private static double millis(Duration duration)
+	{
+		return duration.toNanos() / 1e6;
+	}
+}
@@ -0,0 +1,143 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** The common part of the JMH profilers that record each forked JVM with JFR. The recording is
+ * started by a JVM option appended to the fork with the settings given by the subclass, and the
+ * measurement iterations are marked with a {@link MeasurementPhase} event, so that the subclass
+ * can summarise only what happened while measuring from {@link #recording()} after the fork.
+ *
+ * Needs a JVM with JFR and the jdk.jfr.consumer API (8u262 or later). **/
+package sib.swiss.swissprot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.ExternalProfiler;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.runner.IterationType;
+
+abstract class JfrRecordingProfiler implements ExternalProfiler, InternalProfiler
+{
+	static final String MEASUREMENT_PHASE = "sib.swiss.swissprot.MeasurementPhase";
+
+	private final File dir;
+	private final String settings;
+	private File recording;
+	private int forks;
+
+	// Only used inside the forked JVM.
+	private MeasurementPhase phase;
+	private int measured;
+
+	/** @param settings
+	 *            the name of a .jfc resource next to this class */
+	JfrRecordingProfiler(File dir, String settings)
+	{
+		this.dir = dir;
+		this.settings = settings;
+	}
+
+	/** @return the recording of the last fork */
+	File recording()
+	{
+		return recording;
+	}
+
+	@Override
+	public Collection<String> addJVMInvokeOptions(BenchmarkParams params)
+	{
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Collection<String> addJVMOptions(BenchmarkParams params)
+	{
+		try
+		{
+			if (!dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("Can not create " + dir);
+			final File settingsFile = new File(dir, settings);
+			try (InputStream in = JfrRecordingProfiler.class.getResourceAsStream(settings))
+			{
+				Files.copy(in, settingsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			recording = new File(dir, BenchmarkResults.fileName(params) + "-fork" + (++forks) + ".jfr");
+			return Collections.singletonList("-XX:StartFlightRecording=settings=" + settingsFile.getAbsolutePath()
+			    + ",filename=" + recording.getAbsolutePath() + ",dumponexit=true");
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException("Can not prepare the JFR recording", e);
+		}
+	}
+
+	@Override
+	public void beforeTrial(BenchmarkParams params)
+	{
+	}
+
+	@Override
+	public void beforeIteration(BenchmarkParams params, IterationParams iteration)
+	{
+		if (iteration.getType() == IterationType.MEASUREMENT && phase == null)
+		{
+			phase = new MeasurementPhase();
+			phase.benchmark = params.getBenchmark();
+			phase.begin();
+		}
+	}
+
+	@Override
+	public Collection<? extends Result> afterIteration(BenchmarkParams params, IterationParams iteration,
+	    IterationResult result)
+	{
+		if (iteration.getType() == IterationType.MEASUREMENT && ++measured == iteration.getCount())
+		{
+			phase.end();
+			phase.commit();
+		}
+		return Collections.emptyList();
+	}
+
+	@Override
+	public boolean allowPrintOut()
+	{
+		return true;
+	}
+
+	@Override
+	public boolean allowPrintErr()
+	{
+		return true;
+	}
+}
@@ -0,0 +1,257 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** A JMH profiler recording the JIT compiler's work with JFR, to explain throughput differences
+ * rather than guess at them. Each forked JVM records every compilation, inlining decision and
+ * deoptimization, and the measurement iterations are marked with a {@link MeasurementPhase} event.
+ * After the fork the recording is summarised into the benchmark report: the highest tier reached
+ * by the benchmark method, either compiled on its own or inlined into a compiled caller, the calls
+ * the benchmark method and the JMH stub looping over it failed to inline and the deoptimizations
+ * seen while measuring.
+ *
+ * This replaces looping in a main method hoping to trigger compilation. It needs a JVM with JFR and
+ * the jdk.jfr.consumer API (8u262 or later). Recordings are kept in the output directory.
+ *
+ * Usage: java -jar target/benchmarks.jar GuanineCytosineCount -prof sib.swiss.swissprot.JitProfiler
+ * or -prof sib.swiss.swissprot.JitProfiler:dir=jit-profile **/
+package sib.swiss.swissprot;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedObject;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+import org.openjdk.jmh.results.TextResult;
+
+public class JitProfiler extends JfrRecordingProfiler
+{
+	private static final String DEFAULT_DIR = "jit-profile";
+	private static final String SETTINGS = "jit.jfc";
+	private static final int MAX_LINES = 20;
+
+	public JitProfiler()
+	{
+		this("");
+	}
+
+	public JitProfiler(String options)
+	{
+		super(dir(options), SETTINGS);
+	}
+
+	private static File dir(String options)
+	{
+		File chosen = new File(DEFAULT_DIR);
+		for (String option : options.split(","))
+		{
+			if (option.startsWith("dir="))
+				chosen = new File(option.substring("dir=".length()));
+			else if (!option.isEmpty())
+				throw new IllegalArgumentException("Unknown option " + option + " expected dir=<directory>");
+		}
+		return chosen;
+	}
+
+	@Override
+	public String getDescription()
+	{
+		return "JIT compilation, inlining and deoptimization summary from a JFR recording";
+	}
+
+	@Override
+	public Collection<? extends Result> afterTrial(BenchmarkResult result, long pid, File stdOut, File stdErr)
+	{
+		try
+		{
+			return summarise(result.getParams().getBenchmark(), RecordingFile.readAllEvents(recording().toPath()));
+		}
+		catch (IOException e)
+		{
+			return Collections.singletonList(new TextResult("Could not read " + recording() + ": " + e, "jit"));
+		}
+	}
+
+	Collection<? extends Result> summarise(String benchmark, List<RecordedEvent> events)
+	{
+		final String benchmarkClass = benchmark.substring(0, benchmark.lastIndexOf('.'));
+		final String benchmarkMethod = benchmark.substring(benchmark.lastIndexOf('.') + 1);
+		Instant measureStart = Instant.MIN;
+		Instant measureEnd = Instant.MAX;
+		final Map<Long, Integer> levelOfCompile = new HashMap<>();
+		for (RecordedEvent event : events)
+		{
+			switch (event.getEventType().getName())
+			{
+				case MEASUREMENT_PHASE:
+					measureStart = event.getStartTime();
+					measureEnd = event.getEndTime();
+					break;
+				case "jdk.Compilation":
+					if (event.getBoolean("succeded"))
+						levelOfCompile.put(event.getLong("compileId"), (int) event.getShort("compileLevel"));
+					break;
+				default:
+			}
+		}
+
+		// Highest tier of each method in the benchmark class, compiled on its own or inlined.
+		final Map<String, String> topTier = new TreeMap<>();
+		final Map<String, Integer> levels = new TreeMap<>();
+		final Map<String, Integer> failedInlining = new TreeMap<>();
+		final List<String> deopts = new ArrayList<>();
+		int deoptsTotal = 0;
+		for (RecordedEvent event : events)
+		{
+			switch (event.getEventType().getName())
+			{
+				case "jdk.Compilation":
+				{
+					final String method = name(event.getValue("method"));
+					final Integer level = levelOfCompile.get(event.getLong("compileId"));
+					if (level != null && inBenchmark(method, benchmarkClass))
+						raise(levels, topTier, method, level, event.getBoolean("isOsr") ? "compiled OSR" : "compiled");
+					break;
+				}
+				case "jdk.CompilerInlining":
+				{
+					final String caller = name(event.getValue("caller"));
+					final String callee = calleeName(event.getValue("callee"));
+					final Integer level = levelOfCompile.get(event.getLong("compileId"));
+					if (event.getBoolean("succeeded"))
+					{
+						if (level != null && inBenchmark(callee, benchmarkClass))
+							raise(levels, topTier, callee, level, "inlined into " + caller);
+					}
+					else if (measured(caller, benchmarkClass, benchmarkMethod))
+						failedInlining.merge(caller + " -> " + callee + ": " + event.getString("message"), 1,
+						    Integer::sum);
+					break;
+				}
+				case "jdk.Deoptimization":
+				{
+					deoptsTotal++;
+					final Instant at = event.getStartTime();
+					if (!at.isBefore(measureStart) && !at.isAfter(measureEnd))
+						deopts.add(name(event.getValue("method")) + " line " + event.getInt("lineNumber") + " "
+						    + event.getString("reason") + " " + event.getString("action"));
+					break;
+				}
+				default:
+			}
+		}
+
+		int benchmarkLevel = 0;
+		for (Map.Entry<String, Integer> level : levels.entrySet())
+		{
+			if (level.getKey().endsWith("." + benchmarkMethod))
+				benchmarkLevel = Math.max(benchmarkLevel, level.getValue());
+		}
+		final StringBuilder text = new StringBuilder();
+		text.append("Highest tier reached by methods of ").append(benchmarkClass).append(":\n");
+		for (Map.Entry<String, String> method : topTier.entrySet())
+		{
+			text.append("  tier ").append(levels.get(method.getKey())).append(' ').append(method.getKey())
+			    .append(" (").append(method.getValue()).append(")\n");
+		}
+		text.append("Failed inlining decisions: ").append(failedInlining.size()).append('\n');
+		appendLimited(text, failedInlining.keySet());
+		text.append("Deoptimizations while measuring: ").append(deopts.size()).append(" of ").append(deoptsTotal)
+		    .append('\n');
+		appendLimited(text, deopts);
+		text.append("Recording: ").append(recording()).append('\n');
+
+		return Arrays.asList(new ScalarResult("jit.tier", benchmarkLevel, "tier", AggregationPolicy.MIN),
+		    new ScalarResult("jit.inlining.failed", failedInlining.size(), "#", AggregationPolicy.AVG),
+		    new ScalarResult("jit.deopts.measured", deopts.size(), "#", AggregationPolicy.AVG), new ScalarResult(
+		        "jit.deopts", deoptsTotal, "#", AggregationPolicy.AVG), new TextResult(text.toString(), "jit"));
+	}
+
+	/** The benchmark class, its nested classes and the JMH generated code for it. **/
+	private static boolean inBenchmark(String method, String benchmarkClass)
+	{
+		final String simpleName = benchmarkClass.substring(benchmarkClass.lastIndexOf('.') + 1);
+		return method.startsWith(benchmarkClass + ".") || method.startsWith(benchmarkClass + "$")
+		    || method.contains(".jmh_generated." + simpleName + "_");
+	}
+
+	/** The benchmark method and the JMH generated stubs looping over it, not the setup code. **/
+	private static boolean measured(String method, String benchmarkClass, String benchmarkMethod)
+	{
+		final String simpleName = benchmarkClass.substring(benchmarkClass.lastIndexOf('.') + 1);
+		return method.equals(benchmarkClass + "." + benchmarkMethod) || method.contains(".jmh_generated."
+		    + simpleName + "_" + benchmarkMethod + "_jmhTest." + benchmarkMethod + "_") && method.endsWith(
+		        "_jmhStub");
+	}
+
+	private static void raise(Map<String, Integer> levels, Map<String, String> how, String method, int level,
+	    String why)
+	{
+		final Integer known = levels.get(method);
+		if (known == null || known < level)
+		{
+			levels.put(method, level);
+			how.put(method, why);
+		}
+	}
+
+	private static void appendLimited(StringBuilder text, Collection<String> lines)
+	{
+		int shown = 0;
+		for (String line : lines)
+		{
+			if (shown++ == MAX_LINES)
+			{
+				text.append("  ... ").append(lines.size() - MAX_LINES).append(" more\n");
+				break;
+			}
+			text.append("  ").append(line).append('\n');
+		}
+	}
+
+	private static String name(RecordedMethod method)
+	{
+		return method == null ? "?" : method.getType().getName() + "." + method.getName();
+	}
+
+	private static String calleeName(RecordedObject callee)
+	{
+		return callee == null ? "?" : callee.getString("type").replace('/', '.') + "." + callee.getString("name");
+	}
+}
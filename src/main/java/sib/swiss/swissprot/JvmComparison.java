@@ -0,0 +1,245 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Runs the same benchmarks on several locally installed JVMs, each with several sets of JVM flags,
+ * to answer the question most of these benchmarks ask: is Graal slower than HotSpot? Every
+ * combination is a separate JMH run using the jvm and jvmArgs options, its JSON result is kept and
+ * a side by side report is written with the confidence interval of each score. The first JVM and
+ * profile is the baseline, any other combination that is different from it at the chosen
+ * confidence, and worse, is flagged as SLOWER.
+ *
+ * Usage: java -cp target/benchmarks.jar sib.swiss.swissprot.JvmComparison
+ * --jvm hotspot=/usr/lib/jvm/java-8/bin/java --jvm graal=/opt/graalvm/bin/java
+ * --profile default= --profile jvmci="-XX:+UnlockExperimentalVMOptions -XX:+UseJVMCICompiler"
+ * [--out dir] [--confidence 0.99] [JMH options and benchmark regexps] **/
+package sib.swiss.swissprot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.Statistics;
+
+public class JvmComparison
+{
+	private static final double DEFAULT_CONFIDENCE = 0.99;
+	private static final String DEFAULT_OUT = "jvm-comparison";
+
+	private final Map<String, String> jvms = new LinkedHashMap<>();
+	private final Map<String, String[]> profiles = new LinkedHashMap<>();
+	private final List<String> jmhArgs = new ArrayList<>();
+	private File out = new File(DEFAULT_OUT);
+	private double confidence = DEFAULT_CONFIDENCE;
+
+	public static void main(String[] args) throws IOException, RunnerException, CommandLineOptionException
+	{
+		JvmComparison comparison = new JvmComparison();
+		comparison.parse(args);
+		comparison.run();
+	}
+
+	void parse(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			switch (args[i])
+			{
+				case "--jvm":
+					String[] jvm = nameAndValue(args, ++i);
+					jvms.put(jvm[0], jvm[1]);
+					break;
+				case "--profile":
+					String[] profile = nameAndValue(args, ++i);
+					profiles.put(profile[0], profile[1].trim().isEmpty() ? new String[0] : profile[1].trim().split(
+					    "\\s+"));
+					break;
+				case "--out":
+					out = new File(value(args, ++i));
+					break;
+				case "--confidence":
+					confidence = Double.parseDouble(value(args, ++i));
+					break;
+				default:
+					jmhArgs.add(args[i]);
+			}
+		}
+		if (jvms.isEmpty())
+			jvms.put("current", new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		if (profiles.isEmpty())
+			profiles.put("default", new String[0]);
+	}
+
+	void run() throws IOException, RunnerException, CommandLineOptionException
+	{
+		if (!out.isDirectory() && !out.mkdirs())
+			throw new IOException("Can not create " + out);
+		final CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+		final Map<String, Map<String, RunResult>> byColumn = new LinkedHashMap<>();
+		for (Map.Entry<String, String> jvm : jvms.entrySet())
+		{
+			for (Map.Entry<String, String[]> profile : profiles.entrySet())
+			{
+				final String column = jvm.getKey() + "/" + profile.getKey();
+				ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).jvm(jvm.getValue())
+				    .resultFormat(ResultFormatType.JSON)
+				    .result(new File(out, jvm.getKey() + "-" + profile.getKey() + ".json").getPath());
+				if (profile.getValue().length > 0)
+					options = options.jvmArgs(profile.getValue());
+				Collection<RunResult> results = new Runner(options.build()).run();
+				Map<String, RunResult> byBenchmark = new LinkedHashMap<>();
+				for (RunResult result : results)
+				{
+					byBenchmark.put(BenchmarkResults.key(result.getParams()), result);
+				}
+				byColumn.put(column, byBenchmark);
+			}
+		}
+		try (PrintWriter report = new PrintWriter(new File(out, "report.txt"), StandardCharsets.UTF_8.name()))
+		{
+			writeReport(byColumn, report);
+		}
+		writeReport(byColumn, new PrintWriter(System.out, true));
+	}
+
+	void writeReport(Map<String, Map<String, RunResult>> byColumn, PrintWriter report)
+	{
+		final List<String> columns = new ArrayList<>(byColumn.keySet());
+		final String baseline = columns.get(0);
+		final Set<String> benchmarks = new LinkedHashSet<>();
+		for (String column : columns)
+		{
+			benchmarks.addAll(byColumn.get(column).keySet());
+		}
+		final List<String[]> table = new ArrayList<>();
+		final String[] header = new String[columns.size() + 1];
+		header[0] = "Benchmark";
+		for (int c = 0; c < columns.size(); c++)
+		{
+			header[c + 1] = columns.get(c);
+		}
+		table.add(header);
+		int slower = 0;
+		for (String benchmark : benchmarks)
+		{
+			final String[] row = new String[columns.size() + 1];
+			row[0] = benchmark;
+			final RunResult base = byColumn.get(baseline).get(benchmark);
+			for (int c = 0; c < columns.size(); c++)
+			{
+				final RunResult result = byColumn.get(columns.get(c)).get(benchmark);
+				if (result == null)
+				{
+					row[c + 1] = "-";
+					continue;
+				}
+				row[c + 1] = cell(result.getPrimaryResult());
+				if (c > 0 && base != null)
+				{
+					String comparison = compare(base, result);
+					if (comparison.endsWith("SLOWER"))
+						slower++;
+					row[c + 1] += " (" + comparison + ")";
+				}
+			}
+			table.add(row);
+		}
+		report.printf("Scores with %.1f%% confidence intervals, compared to %s%n%n", confidence * 100, baseline);
+		print(table, report);
+		report.printf("%n%d significant slowdown(s) against %s%n", slower, baseline);
+		report.flush();
+	}
+
+	private String cell(Result<?> result)
+	{
+		final Statistics statistics = result.getStatistics();
+		final double error = statistics.getN() > 2 ? statistics.getMeanErrorAt(confidence) : Double.NaN;
+		return String.format("%.3f ± %.3f %s", result.getScore(), error, result.getScoreUnit());
+	}
+
+	/** @return the ratio of the scores, and SLOWER or FASTER when the difference is significant */
+	private String compare(RunResult base, RunResult other)
+	{
+		final Statistics b = base.getPrimaryResult().getStatistics();
+		final Statistics o = other.getPrimaryResult().getStatistics();
+		final String ratio = String.format("%.2fx", o.getMean() / b.getMean());
+		if (b.getN() < 2 || o.getN() < 2 || !b.isDifferent(o, confidence))
+			return ratio;
+		final boolean higher = o.getMean() > b.getMean();
+		return ratio + ", " + (higher == BenchmarkResults.higherIsBetter(other.getParams().getMode()) ? "FASTER" : "SLOWER");
+	}
+
+	private static void print(List<String[]> table, PrintWriter report)
+	{
+		final int[] widths = new int[table.get(0).length];
+		for (String[] row : table)
+		{
+			for (int c = 0; c < row.length; c++)
+			{
+				widths[c] = Math.max(widths[c], row[c].length());
+			}
+		}
+		for (String[] row : table)
+		{
+			for (int c = 0; c < row.length; c++)
+			{
+				report.print(c == 0 ? String.format("%-" + widths[c] + "s", row[c]) : String.format("  %"
+				    + widths[c] + "s", row[c]));
+			}
+			report.println();
+		}
+	}
+
+	private static String[] nameAndValue(String[] args, int i)
+	{
+		final String argument = value(args, i);
+		final int equals = argument.indexOf('=');
+		if (equals <= 0)
+			throw new IllegalArgumentException("Expected name=value but got " + argument);
+		return new String[] { argument.substring(0, equals), argument.substring(equals + 1) };
+	}
+
+	private static String value(String[] args, int i)
+	{
+		if (i >= args.length)
+			throw new IllegalArgumentException("Missing value after " + args[i - 1]);
+		return args[i];
+	}
+}
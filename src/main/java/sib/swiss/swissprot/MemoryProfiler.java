@@ -0,0 +1,139 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** A JMH profiler reporting the memory use of a benchmark: the bytes the benchmarked data
+ * structure keeps alive per element, and the heap bytes the JMH worker threads allocate per
+ * operation. Both are reported for every iteration on their own, and JMH averages them over
+ * iterations and forks, so the per iteration values and their error are meaningful.
+ *
+ * A benchmark state measures the footprint of its data once per trial and hands it over with
+ * {@link #recordFootprint(double)}. The allocation is sampled per worker thread, as the JMH GC
+ * profiler does, and divided by the operations JMH counted in the iteration, so benchmark methods
+ * need no extra arguments. Threads of pools started by a benchmark are not counted. A worker that
+ * starts during an iteration runs the trial setup there, so it is only counted from the next
+ * iteration on.
+ *
+ * Usage: java -jar target/benchmarks.jar GuanineCytosineCount -prof sib.swiss.swissprot.MemoryProfiler,
+ * BenchmarkProfiles adds it to every run. **/
+package sib.swiss.swissprot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+public class MemoryProfiler implements InternalProfiler
+{
+	static final String BYTES_PER_ELEMENT = "bytesPerElement";
+	static final String ALLOCATED_BYTES_PER_OPERATION = "allocatedBytesPerOperation";
+	private static final String WORKER = "-jmh-worker-";
+
+	private static volatile double footprint = Double.NaN;
+
+	private final Map<Thread, Long> allocatedAtStart = new HashMap<>();
+
+	/** Records the bytes per element of the data structure benchmarked in this JVM. **/
+	public static void recordFootprint(double bytesPerElement)
+	{
+		footprint = bytesPerElement;
+	}
+
+	@Override
+	public String getDescription()
+	{
+		return "Bytes per element of the benchmarked data and bytes allocated per operation";
+	}
+
+	@Override
+	public void beforeIteration(BenchmarkParams params, IterationParams iteration)
+	{
+		allocatedAtStart.clear();
+		for (Thread worker : workers())
+		{
+			final long allocated = HeapMeasurement.threadAllocatedBytes(worker);
+			if (allocated >= 0)
+				allocatedAtStart.put(worker, allocated);
+		}
+	}
+
+	@Override
+	public Collection<? extends Result> afterIteration(BenchmarkParams params, IterationParams iteration,
+	    IterationResult result)
+	{
+		final List<Result<?>> results = new ArrayList<>();
+		if (!Double.isNaN(footprint))
+			results.add(new ScalarResult(BYTES_PER_ELEMENT, footprint, "B/element", AggregationPolicy.AVG));
+		final long allocated = allocatedSinceStart();
+		final long operations = operations(result);
+		if (allocated >= 0 && operations > 0)
+			results.add(new ScalarResult(ALLOCATED_BYTES_PER_OPERATION, allocated / (double) operations,
+			    "B/op", AggregationPolicy.AVG));
+		return results;
+	}
+
+	/** @return the operations of the benchmark in the iteration, warmup and warmdown included as the
+	 *         workers allocate in those as well */
+	static long operations(IterationResult result)
+	{
+		// JMH divides by the batch size, a single shot operation being a whole batch of invocations.
+		return result.getMetadata().getAllOps() * result.getParams().getBatchSize();
+	}
+
+	/** @return the bytes the workers seen before the iteration allocated during it, -1 if there
+	 *         were none or this JVM can not tell */
+	private long allocatedSinceStart()
+	{
+		if (allocatedAtStart.isEmpty())
+			return -1;
+		long allocated = 0;
+		for (Map.Entry<Thread, Long> worker : allocatedAtStart.entrySet())
+		{
+			final long now = HeapMeasurement.threadAllocatedBytes(worker.getKey());
+			if (now < 0)
+				return -1;
+			allocated += now - worker.getValue();
+		}
+		return allocated;
+	}
+
+	private static List<Thread> workers()
+	{
+		final List<Thread> workers = new ArrayList<>();
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+		{
+			if (thread.getName().contains(WORKER))
+				workers.add(thread);
+		}
+		return workers;
+	}
+}
@@ -0,0 +1,67 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** A counter that can be incremented from many threads and sits alone on its cache lines. The
+ * value is surrounded by 128 bytes of padding on each side, enough for CPUs that prefetch cache
+ * lines in adjacent pairs, so updates to one counter never invalidate the line holding another.
+ *
+ * The padding is manual rather than @Contended, which needs -XX:-RestrictContended and a
+ * different annotation on every JDK. Superclass fields are laid out before subclass fields, so
+ * spreading the padding over a class hierarchy keeps the JVM from packing it all on one side. **/
+package sib.swiss.swissprot;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+abstract class PaddedCounterLeftPadding
+{
+	long p01, p02, p03, p04, p05, p06, p07, p08, p09, p10, p11, p12, p13, p14, p15, p16;
+}
+
+abstract class PaddedCounterValue extends PaddedCounterLeftPadding
+{
+	volatile long value;
+}
+
+public final class PaddedCounter extends PaddedCounterValue
+{
+	private static final AtomicLongFieldUpdater<PaddedCounterValue> VALUE = AtomicLongFieldUpdater.newUpdater(
+	    PaddedCounterValue.class, "value");
+
+	long p17, p18, p19, p20, p21, p22, p23, p24, p25, p26, p27, p28, p29, p30, p31, p32;
+
+	public long increment()
+	{
+		return VALUE.incrementAndGet(this);
+	}
+
+	public long add(long delta)
+	{
+		return VALUE.addAndGet(this, delta);
+	}
+
+	public long get()
+	{
+		return value;
+	}
+}
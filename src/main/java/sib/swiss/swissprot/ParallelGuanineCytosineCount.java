@@ -0,0 +1,123 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Counts guanine and cytosine, as in GuanineCytosineCount, by fanning the sequence out as many
+ * small chunk tasks on each {@link ExecutionMode}, to see how CPU bound fan out work fares on
+ * virtual threads against a fork join pool and a fixed pool of platform threads.
+ *
+ * Each operation submits every chunk and waits for all of them. Throughput shows the cost of
+ * scheduling the chunks, sample time shows the tail latency of a whole fan out in its percentiles.
+ * Submitting allocates a task and a future per chunk, so there is no allocation budget here. **/
+package sib.swiss.swissprot;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelGuanineCytosineCount
+{
+	private static final byte GUANINE = 'g';
+	private static final byte CYTOSINE = 'c';
+	private static final byte[] NUCLEOTIDES = { 'a', 'c', 'g', 't' };
+
+	@Param({ CacheSizes.L2, CacheSizes.L3, CacheSizes.DRAM })
+	String workingSet = CacheSizes.L2;
+	/** Bases per chunk task. **/
+	@Param({ "4096", "65536" })
+	int chunk = 4096;
+	@Param({ "FORK_JOIN", "PLATFORM" })
+	ExecutionMode executor = ExecutionMode.FORK_JOIN;
+	private int size;
+	private ByteBuffer dna;
+	private ExecutorService pool;
+	private final List<Future<Integer>> pending = new ArrayList<>();
+
+	@Setup
+	public void setUp()
+	{
+		size = CacheSizes.elements(workingSet, 1);
+		dna = ByteBuffer.allocateDirect(size);
+		Random random = new Random(42);
+		for (int i = 0; i < size; i++)
+		{
+			dna.put(i, NUCLEOTIDES[random.nextInt(NUCLEOTIDES.length)]);
+		}
+		pool = executor.create(Runtime.getRuntime().availableProcessors());
+	}
+
+	@Setup
+	public void measureFootprint()
+	{
+		// One byte per base in a direct buffer, the executor is not part of the data.
+		MemoryProfiler.recordFootprint(1);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		if (pool != null)
+			ExecutionMode.shutdown(pool);
+		pool = null;
+		dna = null;
+	}
+
+	@Benchmark
+	public int countInChunks() throws InterruptedException, ExecutionException
+	{
+		pending.clear();
+		for (int from = 0; from < size; from += chunk)
+		{
+			final int start = from;
+			final int end = Math.min(size, from + chunk);
+			pending.add(pool.submit(() -> countGuanineCytosine(start, end)));
+		}
+		int count = 0;
+		for (Future<Integer> task : pending)
+		{
+			count += task.get();
+		}
+		return count;
+	}
+
+	private int countGuanineCytosine(int from, int to)
+	{
+		int count = 0;
+		for (int i = from; i < to; i++)
+		{
+			final byte nucleotide = dna.get(i);
+			count += (nucleotide == GUANINE || nucleotide == CYTOSINE) ? 1 : 0;
+		}
+		return count;
+	}
+}
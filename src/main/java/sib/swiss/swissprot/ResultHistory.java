@@ -0,0 +1,349 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Keeps a local history of benchmark runs and fails when a run regresses against a baseline. Each
+ * run is stored in its own directory under the history directory, named by time and git commit,
+ * holding the JMH JSON output, the JVM, CPU and commit metadata and a tab separated summary of the
+ * scores with their confidence intervals. The summary is what later runs compare against.
+ *
+ * A benchmark and parameter combination regresses when its confidence interval lies entirely below
+ * the baseline interval shrunk by the threshold for throughput, or entirely above the baseline
+ * interval grown by the threshold for the time modes. In that case the process exits with status 1.
+ *
+ * The baseline is the run named in the BASELINE file of the history directory, or else the previous
+ * run.
+ *
+ * Usage: java -cp target/benchmarks.jar sib.swiss.swissprot.ResultHistory [--history dir]
+ * [--baseline run] [--set-baseline] [--threshold 0.05] [--confidence 0.99] [--compare run]
+ * [JMH options and benchmark regexps] **/
+package sib.swiss.swissprot;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.Statistics;
+
+public class ResultHistory
+{
+	private static final String DEFAULT_HISTORY = "benchmark-history";
+	private static final double DEFAULT_THRESHOLD = 0.05;
+	private static final double DEFAULT_CONFIDENCE = 0.99;
+	static final String BASELINE = "BASELINE";
+	static final String RESULTS = "results.json";
+	static final String METADATA = "metadata.properties";
+	static final String SUMMARY = "summary.tsv";
+
+	private final List<String> jmhArgs = new ArrayList<>();
+	private File history = new File(DEFAULT_HISTORY);
+	private String baseline;
+	private String compare;
+	private boolean setBaseline;
+	private double threshold = DEFAULT_THRESHOLD;
+	private double confidence = DEFAULT_CONFIDENCE;
+
+	public static void main(String[] args) throws IOException, RunnerException, CommandLineOptionException
+	{
+		ResultHistory resultHistory = new ResultHistory();
+		resultHistory.parse(args);
+		if (resultHistory.run() > 0)
+			System.exit(1);
+	}
+
+	void parse(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			switch (args[i])
+			{
+				case "--history":
+					history = new File(value(args, ++i));
+					break;
+				case "--baseline":
+					baseline = value(args, ++i);
+					break;
+				case "--set-baseline":
+					setBaseline = true;
+					break;
+				case "--compare":
+					compare = value(args, ++i);
+					break;
+				case "--threshold":
+					threshold = Double.parseDouble(value(args, ++i));
+					break;
+				case "--confidence":
+					confidence = Double.parseDouble(value(args, ++i));
+					break;
+				default:
+					jmhArgs.add(args[i]);
+			}
+		}
+	}
+
+	/** @return the number of regressions found against the baseline */
+	int run() throws IOException, RunnerException, CommandLineOptionException
+	{
+		final String current = compare != null ? compare : record();
+		if (setBaseline)
+			Files.write(new File(history, BASELINE).toPath(), current.getBytes(StandardCharsets.UTF_8));
+		final String against = baseline != null ? baseline : defaultBaseline(current);
+		if (against == null || against.equals(current))
+		{
+			System.out.println("No baseline to compare " + current + " against");
+			return 0;
+		}
+		return compare(readSummary(against), readSummary(current), against, current, new PrintWriter(System.out,
+		    true));
+	}
+
+	/** Runs the benchmarks and stores their results as a new run in the history.
+	 *
+	 * @return the name of the new run */
+	String record() throws IOException, RunnerException, CommandLineOptionException
+	{
+		final String head = git("rev-parse", "--short", "HEAD");
+		final String commit = head == null ? "unknown" : head;
+		final String run = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + "-" + commit;
+		final File dir = new File(history, run);
+		if (!dir.mkdirs())
+			throw new IOException("Can not create " + dir);
+		final CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+		final Collection<RunResult> results = new Runner(new OptionsBuilder().parent(commandLine)
+		    .resultFormat(ResultFormatType.JSON).result(new File(dir, RESULTS).getPath()).build()).run();
+
+		final Properties metadata = new Properties();
+		metadata.setProperty("git.commit", commit);
+		final String status = git("status", "--porcelain");
+		metadata.setProperty("git.dirty", status == null ? "unknown" : Boolean.toString(!status.isEmpty()));
+		metadata.setProperty("cpu.model", cpuModel());
+		metadata.setProperty("cpu.count", Integer.toString(Runtime.getRuntime().availableProcessors()));
+		metadata.setProperty("os", System.getProperty("os.name") + " " + System.getProperty("os.version") + " "
+		    + System.getProperty("os.arch"));
+		if (!results.isEmpty())
+		{
+			final BenchmarkParams params = results.iterator().next().getParams();
+			metadata.setProperty("jvm", params.getJvm());
+			metadata.setProperty("jvm.args", String.join(" ", params.getJvmArgs()));
+			metadata.setProperty("jdk.version", params.getJdkVersion());
+			metadata.setProperty("vm.name", params.getVmName());
+			metadata.setProperty("vm.version", params.getVmVersion());
+			metadata.setProperty("jmh.version", params.getJmhVersion());
+		}
+		try (OutputStream out = new FileOutputStream(new File(dir, METADATA)))
+		{
+			metadata.store(out, "Benchmark run " + run);
+		}
+		try (PrintWriter summary = new PrintWriter(new File(dir, SUMMARY), StandardCharsets.UTF_8.name()))
+		{
+			for (RunResult result : results)
+			{
+				summary.println(summaryLine(result));
+			}
+		}
+		return run;
+	}
+
+	private String summaryLine(RunResult result)
+	{
+		final Result<?> primary = result.getPrimaryResult();
+		final Statistics statistics = primary.getStatistics();
+		final double[] interval = statistics.getN() > 2 ? statistics.getConfidenceIntervalAt(confidence)
+		    : new double[] { primary.getScore(), primary.getScore() };
+		return String.join("\t", BenchmarkResults.key(result.getParams()), Boolean.toString(BenchmarkResults
+		    .higherIsBetter(result.getParams().getMode())), primary.getScoreUnit(), Double.toString(primary
+		    .getScore()), Double.toString(interval[0]), Double.toString(interval[1]));
+	}
+
+	int compare(Map<String, Score> before, Map<String, Score> after, String beforeName, String afterName,
+	    PrintWriter out)
+	{
+		int regressions = 0;
+		out.printf("Comparing %s against baseline %s, threshold %.1f%%%n", afterName, beforeName, threshold * 100);
+		for (Map.Entry<String, Score> entry : after.entrySet())
+		{
+			final Score now = entry.getValue();
+			final Score then = before.get(entry.getKey());
+			if (then == null)
+			{
+				out.printf("NEW         %s %.3f %s%n", entry.getKey(), now.score, now.unit);
+				continue;
+			}
+			final String verdict;
+			if (now.higherIsBetter ? now.high < then.low * (1 - threshold) : now.low > then.high * (1 + threshold))
+			{
+				verdict = "REGRESSION";
+				regressions++;
+			}
+			else if (now.higherIsBetter ? now.low > then.high * (1 + threshold) : now.high < then.low * (1
+			    - threshold))
+				verdict = "IMPROVED";
+			else
+				verdict = "OK";
+			out.printf("%-11s %s %.3f -> %.3f %s (%+.1f%%)%n", verdict, entry.getKey(), then.score, now.score,
+			    now.unit, (now.score / then.score - 1) * 100);
+		}
+		out.printf("%d regression(s)%n", regressions);
+		out.flush();
+		return regressions;
+	}
+
+	/** @return the run named in the BASELINE file, or the last run before current */
+	String defaultBaseline(String current) throws IOException
+	{
+		final File file = new File(history, BASELINE);
+		if (file.isFile())
+			return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+		final String[] runs = history.list((dir, name) -> new File(new File(dir, name), SUMMARY).isFile());
+		if (runs == null)
+			return null;
+		Arrays.sort(runs);
+		String previous = null;
+		for (String run : runs)
+		{
+			if (run.compareTo(current) >= 0)
+				break;
+			previous = run;
+		}
+		return previous;
+	}
+
+	Map<String, Score> readSummary(String run) throws IOException
+	{
+		final Map<String, Score> scores = new LinkedHashMap<>();
+		final File file = new File(new File(history, run), SUMMARY);
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file),
+		    StandardCharsets.UTF_8)))
+		{
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				final String[] fields = line.split("\t");
+				if (fields.length != 6)
+					throw new IOException("Malformed line in " + file + ": " + line);
+				scores.put(fields[0], new Score(Boolean.parseBoolean(fields[1]), fields[2], Double
+				    .parseDouble(fields[3]), Double.parseDouble(fields[4]), Double.parseDouble(fields[5])));
+			}
+		}
+		return scores;
+	}
+
+	private static String cpuModel() throws IOException
+	{
+		final File cpuinfo = new File("/proc/cpuinfo");
+		if (cpuinfo.isFile())
+		{
+			for (String line : Files.readAllLines(cpuinfo.toPath(), StandardCharsets.UTF_8))
+			{
+				if (line.startsWith("model name"))
+					return line.substring(line.indexOf(':') + 1).trim();
+			}
+		}
+		return System.getProperty("os.arch");
+	}
+
+	/** @return the output of the git command, or null if git fails or is not installed */
+	private static String git(String... command)
+	{
+		final List<String> commandLine = new ArrayList<>();
+		commandLine.add("git");
+		commandLine.addAll(Arrays.asList(command));
+		final StringBuilder output = new StringBuilder();
+		try
+		{
+			final Process process = new ProcessBuilder(commandLine).redirectErrorStream(true).start();
+			try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(),
+			    StandardCharsets.UTF_8)))
+			{
+				String line;
+				while ((line = in.readLine()) != null)
+				{
+					output.append(line).append('\n');
+				}
+			}
+			if (process.waitFor() != 0)
+				return null;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (IOException e)
+		{
+			// Thrown by start when git is not installed.
+			return null;
+		}
+		return output.toString().trim();
+	}
+
+	private static String value(String[] args, int i)
+	{
+		if (i >= args.length)
+			throw new IllegalArgumentException("Missing value after " + args[i - 1]);
+		return args[i];
+	}
+
+	static final class Score
+	{
+		final boolean higherIsBetter;
+		final String unit;
+		final double score;
+		final double low;
+		final double high;
+
+		Score(boolean higherIsBetter, String unit, double score, double low, double high)
+		{
+			this.higherIsBetter = higherIsBetter;
+			this.unit = unit;
+			this.score = score;
+			this.low = low;
+			this.high = high;
+		}
+	}
+}
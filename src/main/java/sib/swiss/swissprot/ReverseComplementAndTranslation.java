@@ -0,0 +1,136 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Benchmarks the DnaKernels, reverse complement and translation, on sequences read from heap and
+ * from direct buffers. The sequence, its reverse complement and its translation together take up
+ * the working set, so the length climbs the same cache ladder as GuanineCytosineCount.
+ *
+ * The in place kernels reverse complement the same sequence on every call, so it flips between
+ * the two strands, which costs the same either way. None of the kernels should allocate. **/
+package sib.swiss.swissprot;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+public class ReverseComplementAndTranslation
+{
+	/** A base in the sequence, one in its reverse complement and a third of an amino acid. **/
+	private static final int BYTES_PER_BASE = 3;
+	private static final byte[] BASES = { 'a', 'c', 'g', 't' };
+
+	@Param({ CacheSizes.L1, CacheSizes.L2, CacheSizes.L3, CacheSizes.DRAM })
+	String workingSet = CacheSizes.L1;
+	@Param({ "heap", "direct" })
+	String buffer = "heap";
+	private int length;
+	private ByteBuffer dna;
+	private ByteBuffer reverseComplement;
+	private ByteBuffer protein;
+
+	@Setup
+	public void setUp()
+	{
+		length = CacheSizes.elements(workingSet, BYTES_PER_BASE);
+		dna = allocate(length);
+		reverseComplement = allocate(length);
+		protein = allocate(length / 3);
+		Random random = new Random(42);
+		for (int i = 0; i < length; i++)
+		{
+			// About one in a hundred bases unknown, so translation meets some X codons.
+			dna.put(i, random.nextInt(100) == 0 ? (byte) 'n' : BASES[random.nextInt(BASES.length)]);
+		}
+	}
+
+	@Setup
+	public void measureFootprint()
+	{
+		// The buffers are plain bytes, building a second DRAM sized copy to weigh them is not needed.
+		final int bases = CacheSizes.elements(workingSet, BYTES_PER_BASE);
+		MemoryProfiler.recordFootprint((2.0 * bases + bases / 3) / bases);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		dna = null;
+		reverseComplement = null;
+		protein = null;
+	}
+
+	private ByteBuffer allocate(int capacity)
+	{
+		final ByteBuffer allocated;
+		if ("direct".equals(buffer))
+			allocated = ByteBuffer.allocateDirect(capacity);
+		else if ("heap".equals(buffer))
+			allocated = ByteBuffer.allocate(capacity);
+		else
+			throw new IllegalArgumentException("buffer must be heap or direct, not " + buffer);
+		return allocated.order(ByteOrder.nativeOrder());
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public byte reverseComplementInPlaceWithTable()
+	{
+		DnaKernels.reverseComplementInPlace(dna, 0, length);
+		return dna.get(0);
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public byte reverseComplementInPlaceWordAtATime()
+	{
+		DnaKernels.reverseComplementInPlaceWordAtATime(dna, 0, length);
+		return dna.get(0);
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public byte reverseComplementWithTable()
+	{
+		DnaKernels.reverseComplement(dna, 0, length, reverseComplement, 0);
+		return reverseComplement.get(0);
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public byte reverseComplementWordAtATime()
+	{
+		DnaKernels.reverseComplementWordAtATime(dna, 0, length, reverseComplement, 0);
+		return reverseComplement.get(0);
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public int translate()
+	{
+		return DnaKernels.translate(dna, 0, length, protein, 0);
+	}
+}
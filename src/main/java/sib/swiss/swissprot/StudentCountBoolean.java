@@ -29,6 +29,7 @@ package sib.swiss.swissprot;
 import java.util.Random;
 
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -37,11 +38,17 @@ import org.openjdk.jmh.annotations.State;
 @State(Scope.Thread)
 public class StudentCountBoolean
 {
-	Student[] students = new Student[2000];
+	/** An inner class Student, with the reference to it in the array, with compressed oops. **/
+	private static final int BYTES_PER_STUDENT = 28;
+
+	@Param({ CacheSizes.L1, CacheSizes.L2, CacheSizes.L3, CacheSizes.DRAM })
+	String workingSet = CacheSizes.L1;
+	Student[] students;
 
 	@Setup
 	public void setUp()
 	{
+		students = new Student[CacheSizes.elements(workingSet, BYTES_PER_STUDENT)];
 		Random r = new Random(42);
 		for (int i = 0; i < students.length; i++)
 		{
@@ -49,7 +56,19 @@ public class StudentCountBoolean
 		}
 	}
 
+	@Setup
+	public void measureFootprint()
+	{
+		MemoryProfiler.recordFootprint(HeapMeasurement.bytesPerElement(() -> {
+			StudentCountBoolean scb = new StudentCountBoolean();
+			scb.workingSet = workingSet;
+			scb.setUp();
+			return scb.students;
+		}, CacheSizes.elements(workingSet, BYTES_PER_STUDENT)));
+	}
+
 	@Benchmark
+	@AllocationBudget(0)
 	public int countMales()
 	{
 		int males = 0;
@@ -61,6 +80,7 @@ public class StudentCountBoolean
 	}
 
 	@Benchmark
+	@AllocationBudget(0)
 	public int countFemales()
 	{
 		int females = 0;
@@ -72,6 +92,7 @@ public class StudentCountBoolean
 	}
 	
 	@Benchmark
+	@AllocationBudget(0)
 	public int countBoth()
 	{
 		int females = 0;
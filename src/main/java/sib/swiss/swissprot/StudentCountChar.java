@@ -29,16 +29,23 @@ package sib.swiss.swissprot;
 import java.util.Random;
 
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 
 @State(Scope.Thread)
 public class StudentCountChar {
-	Student[] students = new Student[2000];
+	/** An inner class Student, with the reference to it in the array, with compressed oops. **/
+	private static final int BYTES_PER_STUDENT = 28;
+
+	@Param({ CacheSizes.L1, CacheSizes.L2, CacheSizes.L3, CacheSizes.DRAM })
+	String workingSet = CacheSizes.L1;
+	Student[] students;
 
 	@Setup
 	public void setUp() {
+		students = new Student[CacheSizes.elements(workingSet, BYTES_PER_STUDENT)];
 		Random r = new Random(42);
 		for (int i = 0; i < students.length; i++) {
 			if (r.nextBoolean())
@@ -48,7 +55,18 @@ public class StudentCountChar {
 		}
 	}
 
+	@Setup
+	public void measureFootprint() {
+		MemoryProfiler.recordFootprint(HeapMeasurement.bytesPerElement(() -> {
+			StudentCountChar scc = new StudentCountChar();
+			scc.workingSet = workingSet;
+			scc.setUp();
+			return scc.students;
+		}, CacheSizes.elements(workingSet, BYTES_PER_STUDENT)));
+	}
+
 	@Benchmark
+	@AllocationBudget(0)
 	public int countMales() {
 		int males = 0;
 		for (int i = 0; i < students.length; i++) {
@@ -58,6 +76,7 @@ public class StudentCountChar {
 	}
 
 	@Benchmark
+	@AllocationBudget(0)
 	public int countFemales() {
 		int females = 0;
 		for (int i = 0; i < students.length; i++) {
@@ -67,6 +86,7 @@ public class StudentCountChar {
 	}
 
 	@Benchmark
+	@AllocationBudget(0)
 	public int countBoth() {
 		int females = 0;
 		int males = 0;
@@ -29,6 +29,7 @@ package sib.swiss.swissprot;
 import java.util.Random;
 
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -37,11 +38,17 @@ import org.openjdk.jmh.annotations.State;
 @State(Scope.Thread)
 public class StudentCountInteger
 {
-	Student[] students = new Student[2000];
+	/** An inner class Student, with the reference to it in the array, with compressed oops. **/
+	private static final int BYTES_PER_STUDENT = 28;
+
+	@Param({ CacheSizes.L1, CacheSizes.L2, CacheSizes.L3, CacheSizes.DRAM })
+	String workingSet = CacheSizes.L1;
+	Student[] students;
 
 	@Setup
 	public void setUp()
 	{
+		students = new Student[CacheSizes.elements(workingSet, BYTES_PER_STUDENT)];
 		Random r = new Random(42);
 		for (int i = 0; i < students.length; i++)
 		{
@@ -53,7 +60,19 @@ public class StudentCountInteger
 		}
 	}
 
+	@Setup
+	public void measureFootprint()
+	{
+		MemoryProfiler.recordFootprint(HeapMeasurement.bytesPerElement(() -> {
+			StudentCountInteger sci = new StudentCountInteger();
+			sci.workingSet = workingSet;
+			sci.setUp();
+			return sci.students;
+		}, CacheSizes.elements(workingSet, BYTES_PER_STUDENT)));
+	}
+
 	@Benchmark
+	@AllocationBudget(0)
 	public int countMales()
 	{
 		int males = 0;
@@ -65,6 +84,7 @@ public class StudentCountInteger
 	}
 
 	@Benchmark
+	@AllocationBudget(0)
 	public int countFemales()
 	{
 		int females = students.length;
@@ -76,6 +96,7 @@ public class StudentCountInteger
 	}
 	
 	@Benchmark
+	@AllocationBudget(0)
 	public int countBoth()
 	{
 		int females = students.length;
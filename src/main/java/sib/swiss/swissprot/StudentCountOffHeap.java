@@ -0,0 +1,162 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Compares counting male students held as an array of small objects, as in StudentCountInteger,
+ * with counting them in the off heap StudentRecordStore. Run with -prof gc to see the difference in
+ * heap footprint and GC time, the off heap store gives the collector nothing to trace. **/
+package sib.swiss.swissprot;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+
+@State(Scope.Thread)
+public class StudentCountOffHeap
+{
+	private static final byte MALE = 1;
+	private static final byte FEMALE = 0;
+	private static final int APPEND_BATCH = 4096;
+
+	@Param({ "2000", "10000000" })
+	int size;
+
+	Student[] students;
+	StudentRecordStore store;
+
+	@Setup
+	public void setUp()
+	{
+		Random r = new Random(42);
+		students = new Student[size];
+		store = new StudentRecordStore(size);
+		int[] ids = new int[APPEND_BATCH];
+		short[] yearsOfBirth = new short[APPEND_BATCH];
+		byte[] genderCodes = new byte[APPEND_BATCH];
+		for (int i = 0; i < size; i += APPEND_BATCH)
+		{
+			int batch = Math.min(APPEND_BATCH, size - i);
+			for (int j = 0; j < batch; j++)
+			{
+				ids[j] = i + j;
+				yearsOfBirth[j] = (short) (1990 + r.nextInt(10));
+				genderCodes[j] = r.nextBoolean() ? MALE : FEMALE;
+				students[i + j] = new Student(ids[j], yearsOfBirth[j], genderCodes[j]);
+			}
+			store.appendAll(ids, yearsOfBirth, genderCodes, 0, batch);
+		}
+	}
+
+	/** The object array and the store share this state, so measure the one the running benchmark
+	 * scans. **/
+	@Setup
+	public void measureFootprint(BenchmarkParams params)
+	{
+		final boolean objects = params.getBenchmark().endsWith("InObjectArray");
+		MemoryProfiler.recordFootprint(HeapMeasurement.bytesPerElement(() -> {
+			StudentCountOffHeap scoh = new StudentCountOffHeap();
+			scoh.size = size;
+			scoh.setUp();
+			return objects ? scoh.students : scoh.store;
+		}, size));
+	}
+
+	@TearDown
+	public void check()
+	{
+		long males = store.countGenderCode(MALE);
+		long females = store.countGenderCode(FEMALE);
+		assert males + females == size : "expected " + size + " got " + (males + females);
+		students = null;
+		store = null;
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public int countMalesInObjectArray()
+	{
+		int males = 0;
+		for (int i = 0; i < students.length; i++)
+		{
+			males = males + students[i].genderCode;
+		}
+		return males;
+	}
+
+	@Benchmark
+	@AllocationBudget(0)
+	public long countMalesOffHeap()
+	{
+		return store.countGenderCode(MALE);
+	}
+
+	/** The executor only matters to the parallel benchmark, so it is a parameter of its own state. **/
+	@State(Scope.Thread)
+	public static class Pool
+	{
+		@Param({ "FORK_JOIN", "PLATFORM" })
+		ExecutionMode executor = ExecutionMode.FORK_JOIN;
+		ExecutorService service;
+
+		@Setup
+		public void setUp()
+		{
+			service = executor.create(Runtime.getRuntime().availableProcessors());
+		}
+
+		@TearDown
+		public void tearDown()
+		{
+			ExecutionMode.shutdown(service);
+			service = null;
+		}
+	}
+
+	@Benchmark
+	public long countMalesOffHeapInParallel(Pool pool)
+	{
+		return store.parallelCountGenderCode(MALE, pool.service);
+	}
+
+	private static class Student
+	{
+		public Student(int id, short yearOfBirth, byte genderCode)
+		{
+			this.id = id;
+			this.yearOfBirth = yearOfBirth;
+			this.genderCode = genderCode;
+		}
+
+		int id;
+		short yearOfBirth;
+		byte genderCode;
+	}
+}
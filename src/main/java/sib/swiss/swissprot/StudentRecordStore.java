@@ -0,0 +1,258 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Stores student records off heap in fixed width slots of direct ByteBuffers. A record is an int
+ * id, a short year of birth and a byte gender code (1 for male, 0 for female as in
+ * StudentCountInteger), padded to 8 bytes. No object is allocated per record so the GC has
+ * nothing to trace, no matter how many records are held.
+ *
+ * Records are spread over chunks of 2^20 slots so that more than 2GB can be stored, the chunk of
+ * a record is its index shifted right and the slot is its index masked. **/
+package sib.swiss.swissprot;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+public class StudentRecordStore
+{
+	static final int ID_OFFSET = 0;
+	static final int YEAR_OF_BIRTH_OFFSET = 4;
+	static final int GENDER_CODE_OFFSET = 6;
+	static final int RECORD_WIDTH = 8;
+
+	private static final int CHUNK_SHIFT = 20;
+	private static final int RECORDS_PER_CHUNK = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = RECORDS_PER_CHUNK - 1;
+
+	private ByteBuffer[] chunks = new ByteBuffer[0];
+	private long size = 0;
+
+	public StudentRecordStore()
+	{
+		this(RECORDS_PER_CHUNK);
+	}
+
+	/** @param expectedRecords
+	 *            used to size the first chunk, so that small stores do not reserve a full chunk */
+	public StudentRecordStore(long expectedRecords)
+	{
+		if (expectedRecords < 0)
+			throw new IllegalArgumentException("expectedRecords must not be negative " + expectedRecords);
+		if (expectedRecords > 0)
+			ensureCapacity(expectedRecords);
+	}
+
+	public long size()
+	{
+		return size;
+	}
+
+	/** @return the number of bytes reserved outside of the java heap */
+	public long offHeapBytes()
+	{
+		long bytes = 0;
+		for (ByteBuffer chunk : chunks)
+		{
+			bytes += chunk.capacity();
+		}
+		return bytes;
+	}
+
+	public long append(int id, short yearOfBirth, byte genderCode)
+	{
+		final long index = size;
+		ensureCapacity(index + 1);
+		size = index + 1;
+		set(index, id, yearOfBirth, genderCode);
+		return index;
+	}
+
+	/** Appends length records taken column wise from the given arrays, starting at offset.
+	 *
+	 * @return the index of the first appended record */
+	public long appendAll(int[] ids, short[] yearsOfBirth, byte[] genderCodes, int offset, int length)
+	{
+		if (offset < 0 || length < 0 || offset + length > ids.length || offset + length > yearsOfBirth.length
+		    || offset + length > genderCodes.length)
+			throw new IndexOutOfBoundsException("offset " + offset + " length " + length);
+		final long first = size;
+		ensureCapacity(first + length);
+		size = first + length;
+		for (int i = 0; i < length; i++)
+		{
+			set(first + i, ids[offset + i], yearsOfBirth[offset + i], genderCodes[offset + i]);
+		}
+		return first;
+	}
+
+	public int getId(long index)
+	{
+		return chunk(index).getInt(slot(index) + ID_OFFSET);
+	}
+
+	public short getYearOfBirth(long index)
+	{
+		return chunk(index).getShort(slot(index) + YEAR_OF_BIRTH_OFFSET);
+	}
+
+	public byte getGenderCode(long index)
+	{
+		return chunk(index).get(slot(index) + GENDER_CODE_OFFSET);
+	}
+
+	public void setId(long index, int id)
+	{
+		chunk(index).putInt(slot(index) + ID_OFFSET, id);
+	}
+
+	public void setYearOfBirth(long index, short yearOfBirth)
+	{
+		chunk(index).putShort(slot(index) + YEAR_OF_BIRTH_OFFSET, yearOfBirth);
+	}
+
+	public void setGenderCode(long index, byte genderCode)
+	{
+		chunk(index).put(slot(index) + GENDER_CODE_OFFSET, genderCode);
+	}
+
+	/** Sequentially scans all records, counting those with the given gender code. **/
+	public long countGenderCode(byte genderCode)
+	{
+		long count = 0;
+		for (int c = 0; c < chunks.length; c++)
+		{
+			count += countGenderCodeInChunk(c, genderCode);
+		}
+		return count;
+	}
+
+	/** Scans the chunks in parallel, one task per chunk on the given executor, counting those records
+	 * with the given gender code. **/
+	public long parallelCountGenderCode(byte genderCode, ExecutorService executor)
+	{
+		final List<Future<Long>> counts = new ArrayList<>(chunks.length);
+		for (int c = 0; c < chunks.length; c++)
+		{
+			final int chunk = c;
+			counts.add(executor.submit(() -> countGenderCodeInChunk(chunk, genderCode)));
+		}
+		long count = 0;
+		try
+		{
+			for (Future<Long> chunkCount : counts)
+			{
+				count += chunkCount.get();
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while counting", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Counting a chunk failed", e.getCause());
+		}
+		return count;
+	}
+
+	private long countGenderCodeInChunk(int c, byte genderCode)
+	{
+		final ByteBuffer chunk = chunks[c];
+		final int records = recordsInChunk(c);
+		int count = 0;
+		for (int r = 0; r < records; r++)
+		{
+			count += (chunk.get(r * RECORD_WIDTH + GENDER_CODE_OFFSET) == genderCode) ? 1 : 0;
+		}
+		return count;
+	}
+
+	private int recordsInChunk(int c)
+	{
+		final long before = ((long) c) << CHUNK_SHIFT;
+		return (int) Math.max(0, Math.min(RECORDS_PER_CHUNK, size - before));
+	}
+
+	private void set(long index, int id, short yearOfBirth, byte genderCode)
+	{
+		final ByteBuffer chunk = chunk(index);
+		final int slot = slot(index);
+		chunk.putInt(slot + ID_OFFSET, id);
+		chunk.putShort(slot + YEAR_OF_BIRTH_OFFSET, yearOfBirth);
+		chunk.put(slot + GENDER_CODE_OFFSET, genderCode);
+	}
+
+	private ByteBuffer chunk(long index)
+	{
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("index " + index + " size " + size);
+		return chunks[(int) (index >>> CHUNK_SHIFT)];
+	}
+
+	private static int slot(long index)
+	{
+		return ((int) index & CHUNK_MASK) * RECORD_WIDTH;
+	}
+
+	private void ensureCapacity(long records)
+	{
+		// Only the first chunk can be smaller than a full chunk, grow it before adding any others.
+		if (chunks.length > 0 && chunks[0].capacity() < RECORDS_PER_CHUNK * RECORD_WIDTH)
+		{
+			final long inFirst = Math.min(records, RECORDS_PER_CHUNK);
+			final int capacity = chunks[0].capacity() / RECORD_WIDTH;
+			if (capacity < inFirst)
+			{
+				final ByteBuffer bigger = allocate((int) Math.min(RECORDS_PER_CHUNK, Math.max(inFirst, 2L * capacity)));
+				final ByteBuffer old = chunks[0].duplicate();
+				old.clear();
+				bigger.put(old);
+				bigger.clear();
+				chunks[0] = bigger;
+			}
+		}
+		final int neededChunks = (int) ((records + CHUNK_MASK) >>> CHUNK_SHIFT);
+		if (neededChunks > chunks.length)
+		{
+			final int old = chunks.length;
+			chunks = Arrays.copyOf(chunks, neededChunks);
+			for (int c = old; c < neededChunks; c++)
+			{
+				chunks[c] = allocate(c == 0 ? (int) Math.min(records, RECORDS_PER_CHUNK) : RECORDS_PER_CHUNK);
+			}
+		}
+	}
+
+	private static ByteBuffer allocate(int records)
+	{
+		return ByteBuffer.allocateDirect(records * RECORD_WIDTH).order(ByteOrder.nativeOrder());
+	}
+}
@@ -0,0 +1,89 @@
+/* Copyright (c) 2016, Swiss Institute of Bioinformatics. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * * Redistributions in binary form must reproduce the above copyright notice, this list of
+ * conditions and the following disclaimer in the documentation and/or other materials provided with
+ * the distribution.
+ *
+ * * Neither the name of Oracle nor the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
+
+/** Generates synthetic keys shaped like UniProtKB accession numbers, such as A0B1C2, to stand in
+ * for real registries of millions of entries. Key i is built from i times a prime modulo the
+ * number of possible accessions, so keys are unique, deterministic and not in sorted order. **/
+package sib.swiss.swissprot;
+
+import java.util.Random;
+
+public final class SyntheticKeys
+{
+	private static final String FIRST = "ABCDEFGHIJKLMNRSTUVWXYZ";
+	private static final String DIGITS = "0123456789";
+	private static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+	private static final String ALPHANUMERIC = LETTERS + DIGITS;
+	/** The characters allowed at each position of a six character accession. **/
+	private static final String[] POSITIONS = { FIRST, DIGITS, LETTERS, ALPHANUMERIC, ALPHANUMERIC, DIGITS };
+	private static final long MULTIPLIER = 1_000_003L;
+	static final long CAPACITY;
+
+	static
+	{
+		long capacity = 1;
+		for (String position : POSITIONS)
+		{
+			capacity *= position.length();
+		}
+		CAPACITY = capacity;
+	}
+
+	private SyntheticKeys()
+	{
+	}
+
+	/** @return count distinct accession like keys */
+	public static String[] accessions(int count)
+	{
+		if (count < 0 || count > CAPACITY)
+			throw new IllegalArgumentException("count must be between 0 and " + CAPACITY + " " + count);
+		final String[] keys = new String[count];
+		final char[] accession = new char[POSITIONS.length];
+		for (int i = 0; i < count; i++)
+		{
+			long code = (i * MULTIPLIER) % CAPACITY;
+			for (int p = POSITIONS.length - 1; p >= 0; p--)
+			{
+				final String allowed = POSITIONS[p];
+				accession[p] = allowed.charAt((int) (code % allowed.length()));
+				code /= allowed.length();
+			}
+			keys[i] = new String(accession);
+		}
+		return keys;
+	}
+
+	/** @return length keys drawn uniformly, with repeats, from the given ones */
+	public static String[] sample(String[] keys, int length, long seed)
+	{
+		final Random random = new Random(seed);
+		final String[] sample = new String[length];
+		for (int i = 0; i < length; i++)
+		{
+			sample[i] = keys[random.nextInt(keys.length)];
+		}
+		return sample;
+	}
+}